@@ -21,7 +21,7 @@ import org.openide.util.Exceptions;
 import org.sleuthkit.autopsy.ingest.FileIngestModule;
 import org.sleuthkit.autopsy.ingest.IngestJobContext;
 import org.sleuthkit.datamodel.AbstractFile;
-import org.sleuthkit.datamodel.TskData;
+import org.sleuthkit.datamodel.TskCoreException;
 
 /**
  *
@@ -32,20 +32,30 @@ public class AhbmIngestModule implements FileIngestModule {
     private Sdhash sdhash;
     private SdbfSet sdbfSet;
     private MatchableHandler matchHandler;
+    private StreamMatchBatcher batcher;
+    private MatchPipeline pipeline;
     private CaseWrapper caseWrapper;
-    private static AhbmJobSettings settings;
-    
+    private AhbmJobContext context;
+    private SkipPolicy skipPolicy;
+    private AhbmJobSettings settings;
+    private static volatile AhbmJobSettings latestSettings;
+
+    /**
+     * @return the settings of the most recently created module, used by the
+     * viewer and the config panels outside of ingest
+     */
     public static AhbmJobSettings getSettings() {
-        return settings;
+        return latestSettings;
     }
 
     public AhbmIngestModule(AhbmJobSettings settings) {
         caseWrapper = new CaseWrapper(settings);
-        this.settings = settings;
+        setSettings(settings);
     }
     
     public void setSettings(AhbmJobSettings ahbmJobSettings) {
         this.settings = ahbmJobSettings;
+        latestSettings = ahbmJobSettings;
     }
 
     @Override
@@ -54,10 +64,30 @@ public class AhbmIngestModule implements FileIngestModule {
             return ProcessResult.OK;
         }
 
+        if (sdhash.isBlockContent(af)) {
+            return processBlocks(af);
+        }
+
+        if (pipeline != null) {
+            pipeline.submit(af);
+            return ProcessResult.OK;
+        }
+
         try {
             Matchable probe = new Matchable(af.getName(), af);
             String sdbf = sdhash.generateSdbf(probe);
+
+            if (sdbf.isEmpty()) {
+                return ProcessResult.OK;
+            }
+
             sdbfSet.addSdbfToOpenCase(sdbf);
+
+            if (batcher != null) {
+                batcher.add(af, sdbf);
+                return ProcessResult.OK;
+            }
+
             Collection<Matchable> matchables = sdbfSet.streamMatch(af, sdbf);
             matchHandler.handleStreamMatches(matchables);
 
@@ -68,37 +98,74 @@ public class AhbmIngestModule implements FileIngestModule {
         }
     }
 
+    /**
+     * Digests a file above the maximum size one segment at a time. Each
+     * segment is added to the open case and matched before the next segment
+     * is read.
+     */
+    private ProcessResult processBlocks(final AbstractFile af) {
+        try {
+            sdhash.generateBlockSdbfs(af, new Sdhash.SegmentHandler() {
+                @Override
+                public void handle(String sdbf) throws IOException, TskCoreException {
+                    sdbfSet.addSdbfToOpenCase(sdbf);
+
+                    matchHandler.handleStreamMatches(sdbfSet.streamMatch(af, sdbf));
+                }
+            });
+
+            return ProcessResult.OK;
+        } catch (Exception ex) {
+            Exceptions.printStackTrace(ex);
+            return ProcessResult.ERROR;
+        }
+    }
+
     private boolean skipFile(AbstractFile af) {
-        return (settings.isSkipKnownGood() && af.getKnown() == TskData.FileKnown.KNOWN)
-                || (settings.getMaxFileSizeInBytes() > 0 && af.getSize() > settings.getMaxFileSizeInBytes());
+        return skipPolicy != null && skipPolicy.check(af) != null;
     }
 
     @Override
     public void startUp(IngestJobContext ijc) {
+        context = AhbmJobContext.acquire(ijc != null ? ijc.getJobId() : 0, settings, caseWrapper);
+        skipPolicy = context.getSkipPolicy();
+
         if (sdbfSet == null) {
-            sdbfSet = new SdbfSet(settings);
+            sdbfSet = context.getSdbfSet();
         }
 
         if (sdhash == null) {
             sdhash = new Sdhash(settings);
+            sdhash.setContentReader(context.getContentReader());
+            sdhash.setCache(context.getSdbfCache());
+            sdhash.setStore(context.getSdbfStore());
         }
 
         if (matchHandler == null) {
             matchHandler = new MatchableHandler();
         }
 
-       
-        try {
-            sdbfSet.loadDefaultStreamSets(caseWrapper.getSettings().isAgainstExisting());
-        } catch (Exception ex) {
-            Exceptions.printStackTrace(ex);
+        if (batcher == null) {
+            batcher = context.getBatcher(sdbfSet, matchHandler);
+        }
+
+        if (pipeline == null) {
+            pipeline = context.getPipeline(sdhash, sdbfSet, matchHandler);
         }
     }
 
     @Override
     public void shutDown() {
+        pipeline = null;
+        batcher = null;
+
         try {
-            sdbfSet.close();
+            if (context != null) {
+                context.release();
+                context = null;
+            } else if (sdbfSet != null) {
+                sdbfSet.close();
+            }
         } catch (IOException ex) {
             Exceptions.printStackTrace(ex);
         }
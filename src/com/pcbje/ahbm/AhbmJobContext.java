@@ -0,0 +1,253 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import com.pcbje.ahbm.matchable.Matchable;
+import com.pcbje.ahbm.matchable.MatchableHandler;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.openide.util.Exceptions;
+
+/**
+ * State shared by the AhbmIngestModule instances of one ingest job. Autopsy
+ * creates one module per file ingest thread, and they all append to the same
+ * open case set and match against the same stream sets.
+ *
+ * @author pcbje
+ */
+public class AhbmJobContext {
+
+    private static final Map<Long, AhbmJobContext> contexts = new HashMap<>();
+    private final long jobId;
+    private final AhbmJobSettings settings;
+    private final CaseWrapper caseWrapper;
+    private SdbfSet sdbfSet;
+    private SdbfCache cache;
+    private StreamMatchBatcher batcher;
+    private MatchPipeline pipeline;
+    private SkipPolicy skipPolicy;
+    private int references;
+    private final ContentReader contentReader = new ContentReader();
+
+    private AhbmJobContext(long jobId, AhbmJobSettings settings, CaseWrapper caseWrapper) {
+        this.jobId = jobId;
+        this.settings = settings;
+        this.caseWrapper = caseWrapper;
+    }
+
+    /**
+     * Returns the context of the job, creating it for the first module that
+     * starts. Every call must be paired with a call to release.
+     */
+    public static AhbmJobContext acquire(long jobId, AhbmJobSettings settings, CaseWrapper caseWrapper) {
+        synchronized (contexts) {
+            AhbmJobContext context = contexts.get(jobId);
+
+            if (context == null) {
+                Matchable.clearContentCache();
+                context = new AhbmJobContext(jobId, settings, caseWrapper);
+                contexts.put(jobId, context);
+            }
+
+            context.references++;
+
+            return context;
+        }
+    }
+
+    /**
+     * Drains the pipeline, matches the probes left in the batcher and closes
+     * the shared SDBF set when the last module of the job shuts down, and
+     * reports the files that failed in the pipeline, the files that were
+     * skipped and the read throughput.
+     *
+     * @return true if this was the last module of the job
+     */
+    public boolean release() throws IOException {
+        synchronized (contexts) {
+            if (--references > 0) {
+                return false;
+            }
+
+            contexts.remove(jobId);
+        }
+
+        synchronized (this) {
+            if (pipeline != null) {
+                try {
+                    pipeline.drain();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    Exceptions.printStackTrace(ex);
+                }
+
+                int failures = pipeline.getFailureCount();
+
+                if (failures > 0) {
+                    caseWrapper.addErrorMessage(String.format("AHBM failed to hash or match %d files, see the log for details", failures));
+                }
+
+                pipeline = null;
+            }
+
+            if (batcher != null) {
+                try {
+                    batcher.close();
+                } catch (Exception ex) {
+                    Exceptions.printStackTrace(ex);
+                }
+
+                batcher = null;
+            }
+
+            if (sdbfSet != null) {
+                sdbfSet.close();
+                sdbfSet = null;
+            }
+
+            cache = null;
+
+            if (skipPolicy != null) {
+                String summary = skipPolicy.getSummary();
+
+                if (summary != null) {
+                    caseWrapper.addInfoMessage(summary);
+                }
+
+                skipPolicy = null;
+            }
+
+            String readSummary = contentReader.getSummary();
+
+            if (readSummary != null) {
+                caseWrapper.addInfoMessage(readSummary);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the reader that the modules of the job read content with, so
+     * that the read summary only covers this job
+     */
+    public ContentReader getContentReader() {
+        return contentReader;
+    }
+
+    /**
+     * @return the SDBF set of the job, with the default stream sets loaded by
+     * the first module that asks for it
+     */
+    public synchronized SdbfSet getSdbfSet() {
+        if (sdbfSet == null) {
+            sdbfSet = new SdbfSet(settings);
+            sdbfSet.setCaseWrapper(caseWrapper);
+            sdbfSet.setCache(getSdbfCache());
+
+            try {
+                sdbfSet.loadDefaultStreamSets(settings.isAgainstExisting());
+            } catch (Exception ex) {
+                Exceptions.printStackTrace(ex);
+            }
+        }
+
+        return sdbfSet;
+    }
+
+    /**
+     * @return the SDBF cache of the job, backed by the SDBF store of the case,
+     * or null if caching is disabled or the store could not be opened
+     */
+    public synchronized SdbfCache getSdbfCache() {
+        if (cache == null && settings.isCacheSdbfs()) {
+            try {
+                cache = new SdbfCache(SdbfStore.open(caseWrapper, settings));
+            } catch (Exception ex) {
+                Exceptions.printStackTrace(ex);
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * @return the batcher of the job, so that probes from all modules fill the
+     * same batches, or null if every probe is matched on its own. The batcher
+     * is created with the SDBF set and handler of the first module that asks.
+     */
+    public synchronized StreamMatchBatcher getBatcher(SdbfSet set, MatchableHandler matchHandler) {
+        if (batcher == null && settings.getBatchSize() > 1) {
+            batcher = new StreamMatchBatcher(set, matchHandler, settings.getBatchSize(), settings.getBatchDelay());
+        }
+
+        return batcher;
+    }
+
+    /**
+     * @return the pipeline of the job, so that the number of pipeline threads
+     * does not grow with the number of ingest threads, or null if files are
+     * hashed and matched on the ingest threads. The pipeline is created with
+     * the Sdhash, SDBF set and handler of the first module that asks.
+     */
+    public synchronized MatchPipeline getPipeline(Sdhash sdhash, SdbfSet set, MatchableHandler matchHandler) {
+        if (pipeline == null && settings.getPipelineThreads() > 0) {
+            pipeline = new MatchPipeline(sdhash, set, matchHandler, getBatcher(set, matchHandler), settings.getPipelineThreads(),
+                    settings.getPipelineQueueSize(), settings.getPrefetchMemoryInBytes());
+        }
+
+        return pipeline;
+    }
+
+    /**
+     * @return the skip policy of the job, so that skip counts are summed over
+     * all modules
+     */
+    public synchronized SkipPolicy getSkipPolicy() {
+        if (skipPolicy == null) {
+            skipPolicy = SkipPolicy.fromSettings(settings);
+        }
+
+        return skipPolicy;
+    }
+
+    /**
+     * @return the SDBF store of the case, or null if storing is disabled or
+     * the store could not be opened. The store outlives the job, since the
+     * viewer reads from it when matches are expanded, and is closed with the
+     * case.
+     */
+    public SdbfStore getSdbfStore() {
+        if (!settings.isStoreSdbfs()) {
+            return null;
+        }
+
+        try {
+            return SdbfStore.open(caseWrapper, settings);
+        } catch (Exception ex) {
+            Exceptions.printStackTrace(ex);
+        }
+
+        return null;
+    }
+
+    public AhbmJobSettings getSettings() {
+        return settings;
+    }
+
+    public long getJobId() {
+        return jobId;
+    }
+}
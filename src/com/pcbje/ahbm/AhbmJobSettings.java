@@ -1,5 +1,7 @@
 package com.pcbje.ahbm;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettings;
 
 /**
@@ -7,10 +9,53 @@ import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettings;
  * @author pcbje
  */
 public class AhbmJobSettings implements IngestModuleIngestJobSettings {
-    private final boolean skipKnownGood;
-    private final boolean againstExisting;
-    private final int readBufferSize;
-    private final int maxFileSize;
+
+    /**
+     * The implementation used to generate SDBFs.
+     */
+    public enum Engine {
+
+        /**
+         * Generate SDBFs inside the JVM using SdbfGenerator.
+         */
+        JAVA,
+        /**
+         * Run the sdhash binary, which must be on the path.
+         */
+        SDHASH
+    }
+
+    private static final long serialVersionUID = -3020841520511214458L;
+    private static final int DEFAULT_SDHASH_TIMEOUT = 300;
+    private static final int DEFAULT_BATCH_SIZE = 1;
+    private static final int DEFAULT_BATCH_DELAY = 1000;
+    private static final int DEFAULT_PIPELINE_QUEUE_SIZE = 64;
+    private static final int DEFAULT_COMPARE_PARALLELISM = 1;
+    private static final int DEFAULT_BLOCK_SEGMENT_SIZE = 64;
+    private static final int DEFAULT_PREFETCH_MEMORY = 128;
+    private static final int DEFAULT_MIN_SCORE = 1;
+    private boolean skipKnownGood;
+    private boolean againstExisting;
+    private int readBufferSize;
+    private int maxFileSize;
+    private Engine engine = Engine.JAVA;
+    private int sdhashTimeout = DEFAULT_SDHASH_TIMEOUT;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int batchDelay = DEFAULT_BATCH_DELAY;
+    private int pipelineThreads = 0;
+    private int pipelineQueueSize = DEFAULT_PIPELINE_QUEUE_SIZE;
+    private int compareParallelism = DEFAULT_COMPARE_PARALLELISM;
+    private boolean cacheSdbfs = true;
+    private boolean storeSdbfs = true;
+    private int minFileSize = SdbfGenerator.MIN_FILE_SIZE;
+    private String skipMimeTypes = "";
+    private boolean sampleEntropy = false;
+    private boolean blockMode = false;
+    private int blockSegmentSize = DEFAULT_BLOCK_SEGMENT_SIZE;
+    private int prefetchMemory = DEFAULT_PREFETCH_MEMORY;
+    private int minScore = DEFAULT_MIN_SCORE;
+    private int maxMatches = 0;
+    private String referenceSetLimits = "";
 
     public AhbmJobSettings(boolean againstExisting, boolean skipKnownGood, int maxFileSize, int readBufferSize) {
         this.againstExisting = againstExisting;
@@ -29,7 +74,39 @@ public class AhbmJobSettings implements IngestModuleIngestJobSettings {
     
     @Override
     public long getVersionNumber() {
-        return 2;
+        return 3;
+    }
+
+    /**
+     * Settings saved by an older version lack the options that were added
+     * since, which then get the same defaults as new settings rather than 0,
+     * false or null.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+
+        skipKnownGood = fields.get("skipKnownGood", true);
+        againstExisting = fields.get("againstExisting", false);
+        readBufferSize = fields.get("readBufferSize", 1024);
+        maxFileSize = fields.get("maxFileSize", 64);
+        engine = (Engine) fields.get("engine", Engine.JAVA);
+        sdhashTimeout = fields.get("sdhashTimeout", DEFAULT_SDHASH_TIMEOUT);
+        batchSize = fields.get("batchSize", DEFAULT_BATCH_SIZE);
+        batchDelay = fields.get("batchDelay", DEFAULT_BATCH_DELAY);
+        pipelineThreads = fields.get("pipelineThreads", 0);
+        pipelineQueueSize = fields.get("pipelineQueueSize", DEFAULT_PIPELINE_QUEUE_SIZE);
+        compareParallelism = fields.get("compareParallelism", DEFAULT_COMPARE_PARALLELISM);
+        cacheSdbfs = fields.get("cacheSdbfs", true);
+        storeSdbfs = fields.get("storeSdbfs", true);
+        minFileSize = fields.get("minFileSize", SdbfGenerator.MIN_FILE_SIZE);
+        skipMimeTypes = (String) fields.get("skipMimeTypes", "");
+        sampleEntropy = fields.get("sampleEntropy", false);
+        blockMode = fields.get("blockMode", false);
+        blockSegmentSize = fields.get("blockSegmentSize", DEFAULT_BLOCK_SEGMENT_SIZE);
+        prefetchMemory = fields.get("prefetchMemory", DEFAULT_PREFETCH_MEMORY);
+        minScore = fields.get("minScore", DEFAULT_MIN_SCORE);
+        maxMatches = fields.get("maxMatches", 0);
+        referenceSetLimits = (String) fields.get("referenceSetLimits", "");
     }
 
     /**
@@ -63,4 +140,278 @@ public class AhbmJobSettings implements IngestModuleIngestJobSettings {
     public int getMaxFileSizeInBytes() {
         return maxFileSize * 1024 * 1024;
     }
+
+    /**
+     * @return the engine
+     */
+    public Engine getEngine() {
+        return engine != null ? engine : Engine.JAVA;
+    }
+
+    /**
+     * @param engine the engine to set
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * @return the number of seconds a single sdhash call may run before the
+     * worker running it is killed
+     */
+    public int getSdhashTimeout() {
+        return sdhashTimeout > 0 ? sdhashTimeout : DEFAULT_SDHASH_TIMEOUT;
+    }
+
+    /**
+     * @param sdhashTimeout the sdhashTimeout to set
+     */
+    public void setSdhashTimeout(int sdhashTimeout) {
+        this.sdhashTimeout = sdhashTimeout;
+    }
+
+    /**
+     * @return the number of files whose SDBFs are matched together, 1 means
+     * that every file is matched as soon as it is hashed
+     */
+    public int getBatchSize() {
+        return batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * @param batchSize the batchSize to set
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the number of milliseconds a file may wait for its batch to
+     * fill up before the batch is matched anyway
+     */
+    public int getBatchDelay() {
+        return batchDelay > 0 ? batchDelay : DEFAULT_BATCH_DELAY;
+    }
+
+    /**
+     * @param batchDelay the batchDelay to set
+     */
+    public void setBatchDelay(int batchDelay) {
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * @return the number of threads per pipeline stage, 0 means that files
+     * are hashed and matched in the ingest thread
+     */
+    public int getPipelineThreads() {
+        return Math.max(0, pipelineThreads);
+    }
+
+    /**
+     * @param pipelineThreads the pipelineThreads to set
+     */
+    public void setPipelineThreads(int pipelineThreads) {
+        this.pipelineThreads = pipelineThreads;
+    }
+
+    /**
+     * @return the number of files each pipeline stage may have waiting before
+     * ingest is slowed down
+     */
+    public int getPipelineQueueSize() {
+        return pipelineQueueSize > 0 ? pipelineQueueSize : DEFAULT_PIPELINE_QUEUE_SIZE;
+    }
+
+    /**
+     * @param pipelineQueueSize the pipelineQueueSize to set
+     */
+    public void setPipelineQueueSize(int pipelineQueueSize) {
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
+    /**
+     * @return the number of stream sets that are compared with a probe at the
+     * same time
+     */
+    public int getCompareParallelism() {
+        return compareParallelism > 0 ? compareParallelism : DEFAULT_COMPARE_PARALLELISM;
+    }
+
+    /**
+     * @param compareParallelism the compareParallelism to set
+     */
+    public void setCompareParallelism(int compareParallelism) {
+        this.compareParallelism = compareParallelism;
+    }
+
+    /**
+     * @return true if SDBFs are cached by the MD5 of the file
+     */
+    public boolean isCacheSdbfs() {
+        return cacheSdbfs;
+    }
+
+    /**
+     * @param cacheSdbfs the cacheSdbfs to set
+     */
+    public void setCacheSdbfs(boolean cacheSdbfs) {
+        this.cacheSdbfs = cacheSdbfs;
+    }
+
+    /**
+     * @return true if the SDBF of every file is stored by its object ID
+     */
+    public boolean isStoreSdbfs() {
+        return storeSdbfs;
+    }
+
+    /**
+     * @param storeSdbfs the storeSdbfs to set
+     */
+    public void setStoreSdbfs(boolean storeSdbfs) {
+        this.storeSdbfs = storeSdbfs;
+    }
+
+    /**
+     * @return the size in bytes that files must have to be hashed
+     */
+    public int getMinFileSize() {
+        return Math.max(0, minFileSize);
+    }
+
+    /**
+     * @param minFileSize the minFileSize to set
+     */
+    public void setMinFileSize(int minFileSize) {
+        this.minFileSize = minFileSize;
+    }
+
+    /**
+     * @return comma separated MIME types that are not hashed, such as
+     * "application/zip,video/*"
+     */
+    public String getSkipMimeTypes() {
+        return skipMimeTypes != null ? skipMimeTypes : "";
+    }
+
+    /**
+     * @param skipMimeTypes the skipMimeTypes to set
+     */
+    public void setSkipMimeTypes(String skipMimeTypes) {
+        this.skipMimeTypes = skipMimeTypes;
+    }
+
+    /**
+     * @return true if files are sampled and skipped when the samples have no
+     * ranked features
+     */
+    public boolean isSampleEntropy() {
+        return sampleEntropy;
+    }
+
+    /**
+     * @param sampleEntropy the sampleEntropy to set
+     */
+    public void setSampleEntropy(boolean sampleEntropy) {
+        this.sampleEntropy = sampleEntropy;
+    }
+
+    /**
+     * @return true if files above the maximum size are digested in block mode
+     * instead of being skipped
+     */
+    public boolean isBlockMode() {
+        return blockMode;
+    }
+
+    /**
+     * @param blockMode the blockMode to set
+     */
+    public void setBlockMode(boolean blockMode) {
+        this.blockMode = blockMode;
+    }
+
+    /**
+     * @return the size in MB of the segments that block mode digests one at a
+     * time
+     */
+    public int getBlockSegmentSize() {
+        return blockSegmentSize > 0 ? blockSegmentSize : DEFAULT_BLOCK_SEGMENT_SIZE;
+    }
+
+    public int getBlockSegmentSizeInBytes() {
+        return getBlockSegmentSize() * 1024 * 1024;
+    }
+
+    /**
+     * @param blockSegmentSize the blockSegmentSize to set
+     */
+    public void setBlockSegmentSize(int blockSegmentSize) {
+        this.blockSegmentSize = blockSegmentSize;
+    }
+
+    /**
+     * @return the MB of content that the pipeline may read ahead of hashing,
+     * 0 to read every file on the hashing thread
+     */
+    public int getPrefetchMemory() {
+        return Math.max(0, prefetchMemory);
+    }
+
+    public long getPrefetchMemoryInBytes() {
+        return getPrefetchMemory() * 1024L * 1024L;
+    }
+
+    /**
+     * @param prefetchMemory the prefetchMemory to set
+     */
+    public void setPrefetchMemory(int prefetchMemory) {
+        this.prefetchMemory = prefetchMemory;
+    }
+
+    /**
+     * @return the score that matches must have to be shown, unless the
+     * reference set has a limit of its own
+     */
+    public int getMinScore() {
+        return minScore > 0 ? minScore : DEFAULT_MIN_SCORE;
+    }
+
+    /**
+     * @param minScore the minScore to set
+     */
+    public void setMinScore(int minScore) {
+        this.minScore = minScore;
+    }
+
+    /**
+     * @return the number of best matches that are kept per probe and
+     * reference set, 0 to keep every match
+     */
+    public int getMaxMatches() {
+        return Math.max(0, maxMatches);
+    }
+
+    /**
+     * @param maxMatches the maxMatches to set
+     */
+    public void setMaxMatches(int maxMatches) {
+        this.maxMatches = maxMatches;
+    }
+
+    /**
+     * @return comma separated limits of single reference sets in the form
+     * "name=minScore:maxMatches", such as "nsrl.sdbf=20:10"
+     */
+    public String getReferenceSetLimits() {
+        return referenceSetLimits != null ? referenceSetLimits : "";
+    }
+
+    /**
+     * @param referenceSetLimits the referenceSetLimits to set
+     */
+    public void setReferenceSetLimits(String referenceSetLimits) {
+        this.referenceSetLimits = referenceSetLimits;
+    }
 }
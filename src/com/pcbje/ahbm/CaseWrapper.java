@@ -13,18 +13,24 @@
  */
 package com.pcbje.ahbm;
 
-import com.pcbje.ahbm.matchable.Matchable;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import org.openide.util.Exceptions;
 import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.ingest.IngestManager;
 import org.sleuthkit.autopsy.ingest.IngestMessage;
 import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.TskCoreException;
 
@@ -35,6 +41,7 @@ import org.sleuthkit.datamodel.TskCoreException;
 public class CaseWrapper {
 
     private final AhbmJobSettings settings;
+    private volatile ContentReader contentReader = ContentReader.getDefault();
 
     public CaseWrapper(AhbmJobSettings settings) {
         this.settings = settings;
@@ -59,39 +66,118 @@ public class CaseWrapper {
         return Case.getCurrentCase().getSleuthkitCase().getContentById(objId);
     }
 
+    /**
+     * Looks up files with a single query.
+     *
+     * @return the files among the IDs, keyed by ID
+     */
+    public Map<Long, Content> getContentsById(Collection<Long> objIds) throws TskCoreException {
+        Map<Long, Content> result = new HashMap<>();
+
+        if (objIds.isEmpty()) {
+            return result;
+        }
+
+        StringBuilder where = new StringBuilder("obj_id IN (");
+
+        for (Long objId : objIds) {
+            where.append(objId).append(",");
+        }
+
+        where.setCharAt(where.length() - 1, ')');
+
+        for (AbstractFile file : Case.getCurrentCase().getSleuthkitCase().findAllFilesWhere(where.toString())) {
+            result.put(file.getId(), file);
+        }
+
+        return result;
+    }
+
+    /**
+     * Runs the action every time the current case is closed, including when
+     * it is closed because another case is opened.
+     */
+    public void addCaseClosedListener(final Runnable action) {
+        Case.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (Case.Events.CURRENT_CASE.toString().equals(evt.getPropertyName()) && evt.getOldValue() != null) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    public int getNumberOfIngestThreads() {
+        return IngestManager.getInstance().getNumberOfFileIngestThreads();
+    }
+
     public void addOverizeWarning(Content content) throws TskCoreException {
-        IngestServices.getInstance().postMessage(IngestMessage.
-                createMessage(IngestMessage.MessageType.WARNING, AhbmIngestModule.class.getCanonicalName(),
-                String.format("File %s is too large for AHBM", content.getUniquePath())));
+        postMessage(IngestMessage.MessageType.WARNING, String.format("File %s is too large for AHBM", content.getUniquePath()));
     }
 
-    public void addMatchNotice(Matchable probe) throws TskCoreException {
-        String name = probe.getContent().getName();
+    /**
+     * Posts a message for the ingest inbox, such as a summary at the end of
+     * a job.
+     */
+    public void addInfoMessage(String message) {
+        postMessage(IngestMessage.MessageType.INFO, message);
+    }
 
+    /**
+     * Posts an error for the ingest inbox, for failures that are not
+     * reported as the result of a single file.
+     */
+    public void addErrorMessage(String message) {
+        postMessage(IngestMessage.MessageType.ERROR, message);
+    }
+
+    private void postMessage(IngestMessage.MessageType type, String message) {
         IngestServices.getInstance().postMessage(IngestMessage.
-                createMessage(IngestMessage.MessageType.INFO, AhbmIngestModule.class.getCanonicalName(),
-                String.format("Found AHBM hits for %s", name)));
+                createMessage(type, AhbmIngestModule.class.getCanonicalName(), message));
     }
 
     public AhbmJobSettings getSettings() {
         return settings;
     }
 
-    public void readFile(OutputStream baos, int bufferSize, Content content) {
-
-        byte[] buffer = new byte[bufferSize];
-
-        try {
-            for (long pos = 0; pos < content.getSize(); pos = pos + buffer.length) {
-                int remaining = (int) Math.min(content.getSize() - pos, buffer.length);
+    /**
+     * @param contentReader counts the reads of this wrapper, such as the
+     * reads of one ingest job
+     */
+    public void setContentReader(ContentReader contentReader) {
+        this.contentReader = contentReader;
+    }
 
-                int read = content.read(buffer, pos, remaining);
+    /**
+     * Reads the whole content with the ContentReader of this wrapper.
+     *
+     * @param bufferSize the smallest read size
+     * @throws IOException if the content ends before its size
+     */
+    public void readFile(OutputStream baos, int bufferSize, Content content) throws IOException, TskCoreException {
+        long read = contentReader.read(content, bufferSize, ContentReader.toStream(baos));
+
+        if (read < content.getSize()) {
+            throw new IOException(String.format("Read %d of %d bytes of %s", read, content.getSize(), content.getName()));
+        }
+    }
 
-                baos.write(buffer, 0, read);
-            }
-        } catch (Exception e) {
-            Exceptions.printStackTrace(e);
+    /**
+     * Reads length bytes of the content starting at offset, or the rest of the
+     * content if it ends before that.
+     *
+     * @return the number of bytes read
+     * @throws IOException if the content ends before its size
+     */
+    public int readFile(byte[] buffer, int length, Content content, long offset) throws IOException, TskCoreException {
+        int remaining = (int) Math.min(length, content.getSize() - offset);
+
+        if (remaining > 0) {
+            contentReader.readFully(content, offset, buffer, remaining);
         }
+
+        return Math.max(remaining, 0);
     }
 
     public void storeProperties(Properties properties) {
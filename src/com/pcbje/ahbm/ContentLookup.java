@@ -0,0 +1,110 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Resolves object IDs from match results to Content. IDs that are not cached
+ * are looked up in batches with one query per BATCH_SIZE IDs, and IDs that
+ * are not files fall back to a lookup of their own. Results, including IDs
+ * that were not found, are kept in an LRU cache.
+ *
+ * @author pcbje
+ */
+public class ContentLookup {
+
+    public static final int BATCH_SIZE = 500;
+    public static final int DEFAULT_CAPACITY = 10000;
+    private final CaseWrapper caseWrapper;
+    private final Map<Long, Content> cache;
+
+    public ContentLookup(CaseWrapper caseWrapper, final int capacity) {
+        this.caseWrapper = caseWrapper;
+        this.cache = new LinkedHashMap<Long, Content>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Content> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the content of every ID that exists in the case
+     */
+    public Map<Long, Content> lookup(Collection<Long> ids) throws TskCoreException {
+        Map<Long, Content> result = new HashMap<>();
+        Set<Long> unique = new LinkedHashSet<>();
+
+        synchronized (cache) {
+            for (Long id : ids) {
+                if (cache.containsKey(id)) {
+                    Content content = cache.get(id);
+
+                    if (content != null) {
+                        result.put(id, content);
+                    }
+                } else {
+                    unique.add(id);
+                }
+            }
+        }
+
+        List<Long> missing = new ArrayList<>(unique);
+
+        for (int i = 0; i < missing.size(); i += BATCH_SIZE) {
+            List<Long> batch = missing.subList(i, Math.min(missing.size(), i + BATCH_SIZE));
+            Map<Long, Content> found = caseWrapper.getContentsById(batch);
+
+            for (Long id : batch) {
+                Content content = found.get(id);
+
+                if (content == null) {
+                    content = caseWrapper.getContentById(id);
+                }
+
+                if (content != null) {
+                    result.put(id, content);
+                }
+
+                synchronized (cache) {
+                    cache.put(id, content);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicLong;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Reads content from the image into a Sink with as few TSK reads as
+ * possible. Each thread reuses one read buffer, and reads are as large as the
+ * content up to MAX_READ, so a small file is a single read. The read
+ * buffer size in the settings is only a lower bound.
+ *
+ * TSK copies into a heap array, so the buffers are heap arrays and are
+ * wrapped rather than copied when a sink is a channel.
+ *
+ * Bytes read and the wall-clock time from the start of the first read to the
+ * end of the last are counted so that the image read throughput can be
+ * reported. Each ingest job reads through a reader of its own, so that jobs
+ * that run at the same time do not count each other's reads, and reads on
+ * several threads are not counted twice.
+ *
+ * @author pcbje
+ */
+public class ContentReader {
+
+    public static final int MAX_READ = 1024 * 1024;
+    private static final ContentReader defaultReader = new ContentReader();
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[0];
+        }
+    };
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private boolean readStarted;
+    private long firstReadStart;
+    private long lastReadEnd;
+
+    /**
+     * Receives the bytes of the content in order. The buffer is reused after
+     * write returns.
+     */
+    public interface Sink {
+
+        void write(byte[] buffer, int length) throws IOException;
+    }
+
+    /**
+     * @return the reader of everything that is not read for an ingest job
+     */
+    public static ContentReader getDefault() {
+        return defaultReader;
+    }
+
+    public static Sink toStream(final OutputStream out) {
+        return new Sink() {
+            @Override
+            public void write(byte[] buffer, int length) throws IOException {
+                out.write(buffer, 0, length);
+            }
+        };
+    }
+
+    public static Sink toChannel(final WritableByteChannel channel) {
+        return new Sink() {
+            @Override
+            public void write(byte[] buffer, int length) throws IOException {
+                ByteBuffer wrapped = ByteBuffer.wrap(buffer, 0, length);
+
+                while (wrapped.hasRemaining()) {
+                    channel.write(wrapped);
+                }
+            }
+        };
+    }
+
+    public static Sink toDigest(final MessageDigest digest) {
+        return new Sink() {
+            @Override
+            public void write(byte[] buffer, int length) {
+                digest.update(buffer, 0, length);
+            }
+        };
+    }
+
+    /**
+     * Reads the whole content into the sink. Stops with an
+     * InterruptedIOException between reads when the thread is interrupted.
+     *
+     * @param minReadSize reads are at least this large unless the content is
+     * smaller
+     * @return the number of bytes read
+     */
+    public long read(Content content, int minReadSize, Sink sink) throws IOException, TskCoreException {
+        long size = content.getSize();
+        byte[] buffer = getBuffer((int) Math.min(size, Math.max(minReadSize, MAX_READ)));
+        long pos = 0;
+
+        while (pos < size) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Read cancelled");
+            }
+
+            int read = read(content, pos, buffer, (int) Math.min(buffer.length, size - pos));
+
+            if (read <= 0) {
+                break;
+            }
+
+            sink.write(buffer, read);
+            pos += read;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Reads up to length bytes at offset into the start of the buffer.
+     *
+     * @return the number of bytes read
+     */
+    public int read(Content content, long offset, byte[] buffer, int length) throws TskCoreException {
+        long start = System.nanoTime();
+
+        int read = content.read(buffer, offset, length);
+
+        addReadTime(start, System.nanoTime());
+        reads.incrementAndGet();
+
+        if (read > 0) {
+            bytesRead.addAndGet(read);
+        }
+
+        return read;
+    }
+
+    /**
+     * Reads length bytes at offset into the start of the buffer. TSK may
+     * return fewer bytes than asked for, so the rest is read in further reads
+     * until the buffer is full.
+     *
+     * @throws IOException if the content ends before length bytes were read
+     */
+    public void readFully(Content content, long offset, byte[] buffer, int length) throws IOException, TskCoreException {
+        int filled = Math.max(0, read(content, offset, buffer, length));
+
+        while (filled < length) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Read cancelled");
+            }
+
+            byte[] rest = getBuffer(Math.min(length - filled, MAX_READ));
+            int read = read(content, offset + filled, rest, Math.min(rest.length, length - filled));
+
+            if (read <= 0) {
+                throw new IOException(String.format("Read %d of %d bytes of %s at offset %d", filled, length, content.getName(), offset));
+            }
+
+            System.arraycopy(rest, 0, buffer, filled, read);
+            filled += read;
+        }
+    }
+
+    private synchronized void addReadTime(long start, long end) {
+        if (!readStarted) {
+            readStarted = true;
+            firstReadStart = start;
+            lastReadEnd = end;
+        } else {
+            firstReadStart = Math.min(firstReadStart, start);
+            lastReadEnd = Math.max(lastReadEnd, end);
+        }
+    }
+
+    private static byte[] getBuffer(int size) {
+        byte[] buffer = buffers.get();
+
+        if (buffer.length < size) {
+            buffer = new byte[size];
+            buffers.set(buffer);
+        }
+
+        return buffer;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getReads() {
+        return reads.get();
+    }
+
+    /**
+     * @return the wall-clock time from the start of the first read to the end
+     * of the last read
+     */
+    public synchronized long getReadNanos() {
+        return readStarted ? lastReadEnd - firstReadStart : 0;
+    }
+
+    /**
+     * @return a one line summary of the reads of this reader, or null if
+     * nothing was read
+     */
+    public String getSummary() {
+        long bytes = getBytesRead();
+
+        if (bytes <= 0) {
+            return null;
+        }
+
+        double mb = bytes / (1024.0 * 1024.0);
+        double seconds = Math.max(1, getReadNanos()) / 1e9;
+
+        return String.format("Read %.1f MB from the image in %d reads at %.1f MB/s", mb, getReads(), mb / seconds);
+    }
+}
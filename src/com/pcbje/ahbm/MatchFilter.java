@@ -0,0 +1,202 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import org.openide.util.Exceptions;
+
+/**
+ * Drops matches below a minimum score and keeps only the best matches of each
+ * probe, so that low scoring noise never becomes a Matchable. Limits are set
+ * per reference set by name, with defaults for the sets that are not named.
+ *
+ * @author pcbje
+ */
+public class MatchFilter {
+
+    /**
+     * A comparison with one reference set whose matches are filtered.
+     */
+    public interface Comparison {
+
+        void compare(SdbfMatch.Handler handler) throws IOException;
+    }
+
+    /**
+     * The minimum score and the number of matches that are kept per probe in
+     * one reference set. A maximum of 0 keeps every match.
+     */
+    public static class Limit {
+
+        private final int minScore;
+        private final int maxMatches;
+
+        public Limit(int minScore, int maxMatches) {
+            this.minScore = minScore;
+            this.maxMatches = maxMatches;
+        }
+
+        public int getMinScore() {
+            return minScore;
+        }
+
+        public int getMaxMatches() {
+            return maxMatches;
+        }
+    }
+
+    /**
+     * Keeps the best matches of each probe until they are flushed.
+     */
+    private static class TopMatches implements SdbfMatch.Handler {
+
+        private final Limit limit;
+        private final Map<String, PriorityQueue<SdbfMatch>> probes = new LinkedHashMap<>();
+
+        TopMatches(Limit limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void handle(SdbfMatch match) {
+            if (match.getScore() < limit.getMinScore()) {
+                return;
+            }
+
+            PriorityQueue<SdbfMatch> best = probes.get(match.getProbe());
+
+            if (best == null) {
+                best = new PriorityQueue<>(limit.getMaxMatches() + 1, BY_SCORE);
+                probes.put(match.getProbe(), best);
+            }
+
+            if (best.size() < limit.getMaxMatches()) {
+                best.add(match);
+            } else if (best.peek().getScore() < match.getScore()) {
+                best.poll();
+                best.add(match);
+            }
+        }
+
+        /**
+         * Hands the kept matches to the handler, best first for each probe.
+         */
+        void flushTo(SdbfMatch.Handler handler) {
+            for (PriorityQueue<SdbfMatch> best : probes.values()) {
+                List<SdbfMatch> sorted = new ArrayList<>(best);
+
+                Collections.sort(sorted, Collections.reverseOrder(BY_SCORE));
+
+                for (SdbfMatch match : sorted) {
+                    handler.handle(match);
+                }
+            }
+
+            probes.clear();
+        }
+    }
+
+    private static final Comparator<SdbfMatch> BY_SCORE = new Comparator<SdbfMatch>() {
+        @Override
+        public int compare(SdbfMatch m1, SdbfMatch m2) {
+            return Integer.compare(m1.getScore(), m2.getScore());
+        }
+    };
+
+    private final Limit defaultLimit;
+    private final Map<String, Limit> limits = new HashMap<>();
+
+    public MatchFilter(Limit defaultLimit) {
+        this.defaultLimit = defaultLimit;
+    }
+
+    /**
+     * @return a filter with the default limits of the settings and the limits
+     * of each set named in the settings
+     */
+    public static MatchFilter fromSettings(AhbmJobSettings settings) {
+        if (settings == null) {
+            return new MatchFilter(new Limit(1, 0));
+        }
+
+        MatchFilter filter = new MatchFilter(new Limit(settings.getMinScore(), settings.getMaxMatches()));
+
+        for (String entry : settings.getReferenceSetLimits().split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+
+            try {
+                String[] nameAndLimit = entry.split("=");
+                String[] limit = nameAndLimit[1].split(":");
+
+                filter.setLimit(nameAndLimit[0].trim(), new Limit(Integer.parseInt(limit[0].trim()), Integer.parseInt(limit[1].trim())));
+            } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+                Exceptions.printStackTrace(new IllegalArgumentException(String.format("Invalid reference set limit: %s", entry), ex));
+            }
+        }
+
+        return filter;
+    }
+
+    /**
+     * @param name the file name of the reference set
+     */
+    public void setLimit(String name, Limit limit) {
+        limits.put(name, limit);
+    }
+
+    public Limit getLimit(File referenceSet) {
+        Limit limit = limits.get(referenceSet.getName());
+
+        return limit != null ? limit : defaultLimit;
+    }
+
+    /**
+     * Compares with a reference set through the limits of the set. Matches
+     * below the minimum score are dropped as they are found. If the number of
+     * matches is limited, the best matches of each probe are handed on when
+     * the comparison is done.
+     */
+    public void filter(File referenceSet, final SdbfMatch.Handler handler, Comparison comparison) throws IOException {
+        final Limit limit = getLimit(referenceSet);
+
+        if (limit.getMaxMatches() > 0) {
+            TopMatches top = new TopMatches(limit);
+
+            comparison.compare(top);
+            top.flushTo(handler);
+        } else if (limit.getMinScore() > 1) {
+            comparison.compare(new SdbfMatch.Handler() {
+                @Override
+                public void handle(SdbfMatch match) {
+                    if (match.getScore() >= limit.getMinScore()) {
+                        handler.handle(match);
+                    }
+                }
+            });
+        } else {
+            comparison.compare(handler);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import com.pcbje.ahbm.matchable.Matchable;
+import com.pcbje.ahbm.matchable.MatchableHandler;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openide.util.Exceptions;
+import org.sleuthkit.datamodel.AbstractFile;
+
+/**
+ * Runs hashing, matching and publishing of ingested files on separate
+ * executors so that FileIngestModule.process only has to enqueue the file.
+ * Every stage has a bounded queue. When a queue is full the submitting thread
+ * runs the task itself, which slows down the stage before it instead of
+ * buffering without limit.
+ *
+ * With a prefetch budget, a single reader thread reads the content of the
+ * next files while earlier files are hashed, so that image I/O and hashing
+ * overlap. Read-ahead content is held until it has been hashed, and the
+ * reader waits when the total would exceed the budget. Files larger than the
+ * budget are not read ahead. The pipeline is shared by all modules of a job
+ * (see AhbmJobContext), so the budget is per job.
+ *
+ * Files that fail in a stage are logged and counted, since the ingest thread
+ * that submitted them has already returned.
+ *
+ * @author pcbje
+ */
+public class MatchPipeline {
+
+    private final Sdhash sdhash;
+    private final SdbfSet sdbfSet;
+    private final MatchableHandler matchHandler;
+    private final StreamMatchBatcher batcher;
+    private final ThreadPoolExecutor readStage;
+    private final Semaphore prefetchBudget;
+    private final int prefetchBudgetKb;
+    private final ThreadPoolExecutor hashStage;
+    private final ThreadPoolExecutor compareStage;
+    private final ThreadPoolExecutor publishStage;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * @param batcher collects the probes for batched matching, or null to
+     * match every file on its own
+     * @param threads the number of hashing threads and matching threads
+     * @param queueSize the number of files each stage may have waiting
+     */
+    public MatchPipeline(Sdhash sdhash, SdbfSet sdbfSet, MatchableHandler matchHandler, StreamMatchBatcher batcher, int threads, int queueSize) {
+        this(sdhash, sdbfSet, matchHandler, batcher, threads, queueSize, 0);
+    }
+
+    /**
+     * @param prefetchBytes the most content that may be read ahead of
+     * hashing, or 0 to read each file on the hashing thread
+     */
+    public MatchPipeline(Sdhash sdhash, SdbfSet sdbfSet, MatchableHandler matchHandler, StreamMatchBatcher batcher, int threads, int queueSize, long prefetchBytes) {
+        this.sdhash = sdhash;
+        this.sdbfSet = sdbfSet;
+        this.matchHandler = matchHandler;
+        this.batcher = batcher;
+        this.prefetchBudgetKb = (int) Math.min(Integer.MAX_VALUE, prefetchBytes / 1024);
+        this.prefetchBudget = prefetchBudgetKb > 0 ? new Semaphore(prefetchBudgetKb) : null;
+        this.readStage = prefetchBudget != null ? createStage("ahbm-read", 1, queueSize) : null;
+        this.hashStage = createStage("ahbm-hash", threads, queueSize);
+        this.compareStage = createStage("ahbm-compare", threads, queueSize);
+        this.publishStage = createStage("ahbm-publish", 1, queueSize);
+    }
+
+    private static ThreadPoolExecutor createStage(final String name, int threads, int queueSize) {
+        int size = Math.max(1, threads);
+
+        return new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Queues a file for hashing and matching.
+     */
+    public void submit(final AbstractFile file) {
+        if (readStage != null) {
+            readStage.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        read(file);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        fail(ex);
+                    } catch (Exception ex) {
+                        fail(ex);
+                    }
+                }
+            });
+        } else {
+            submitHash(file, null, 0);
+        }
+    }
+
+    /**
+     * Reads the content within the prefetch budget and passes it on for
+     * hashing. Content that will not be hashed in process, or that does not
+     * fit in the budget, is not read.
+     */
+    private void read(AbstractFile file) throws Exception {
+        long kb = (file.getSize() + 1023) / 1024;
+
+        if (kb > prefetchBudgetKb || !sdhash.isPrefetchable(file)) {
+            submitHash(file, null, 0);
+            return;
+        }
+
+        int permits = (int) Math.max(1, kb);
+
+        prefetchBudget.acquire(permits);
+
+        try {
+            Sdhash.ContentBuffer content = sdhash.readContent(file);
+            submitHash(file, content, permits);
+        } catch (Exception | Error ex) {
+            prefetchBudget.release(permits);
+            throw ex;
+        }
+    }
+
+    /**
+     * @param permits the prefetch budget held by the content, released once
+     * it has been hashed
+     */
+    private void submitHash(final AbstractFile file, final Sdhash.ContentBuffer content, final int permits) {
+        hashStage.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    hash(file, content);
+                } catch (Exception ex) {
+                    fail(ex);
+                } finally {
+                    if (permits > 0) {
+                        prefetchBudget.release(permits);
+                    }
+                }
+            }
+        });
+    }
+
+    private void hash(final AbstractFile file, Sdhash.ContentBuffer content) throws Exception {
+        Matchable probe = new Matchable(file.getName(), file);
+        final String sdbf = content != null
+                ? sdhash.generateSdbf(probe, content.getBuffer(), content.size())
+                : sdhash.generateSdbf(probe);
+
+        if (sdbf.isEmpty()) {
+            return;
+        }
+
+        compareStage.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compare(file, sdbf);
+                } catch (Exception ex) {
+                    fail(ex);
+                }
+            }
+        });
+    }
+
+    private void compare(AbstractFile file, String sdbf) throws Exception {
+        sdbfSet.addSdbfToOpenCase(sdbf);
+
+        if (batcher != null) {
+            batcher.add(file, sdbf);
+            return;
+        }
+
+        final Collection<Matchable> matchables = sdbfSet.streamMatch(file, sdbf);
+
+        publishStage.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    matchHandler.handleStreamMatches(matchables);
+                } catch (Exception ex) {
+                    fail(ex);
+                }
+            }
+        });
+    }
+
+    private void fail(Exception ex) {
+        failures.incrementAndGet();
+        Exceptions.printStackTrace(ex);
+    }
+
+    /**
+     * @return the number of files that could not be read, hashed or matched
+     */
+    public int getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Waits until every queued file has passed through all stages and stops
+     * the stage threads. The batcher, if any, is left for the caller to
+     * close.
+     */
+    public void drain() throws InterruptedException {
+        if (readStage != null) {
+            drain(readStage);
+        }
+
+        drain(hashStage);
+        drain(compareStage);
+        drain(publishStage);
+    }
+
+    private static void drain(ThreadPoolExecutor stage) throws InterruptedException {
+        stage.shutdown();
+
+        while (!stage.awaitTermination(1, TimeUnit.SECONDS)) {
+            // Keep waiting, shutDown must not return before the queue is empty
+        }
+    }
+}
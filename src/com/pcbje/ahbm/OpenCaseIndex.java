@@ -0,0 +1,83 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only list of the digests in the open case. Ingest threads add the
+ * digest of every file they hash, and later probes see it at once. Appends
+ * are serialized, reads never lock: a reader takes the current size and only
+ * looks at elements below it, which were published before the size was.
+ *
+ * @author pcbje
+ */
+public class OpenCaseIndex {
+
+    private static final int CHUNK_SIZE = 1024;
+    private volatile Sdbf[][] chunks = new Sdbf[16][];
+    private volatile int size;
+
+    public synchronized void add(Sdbf sdbf) {
+        int chunk = size / CHUNK_SIZE;
+
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new Sdbf[CHUNK_SIZE];
+        }
+
+        chunks[chunk][size % CHUNK_SIZE] = sdbf;
+        size++;
+    }
+
+    public void addAll(List<Sdbf> sdbfs) {
+        for (Sdbf sdbf : sdbfs) {
+            add(sdbf);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the digests added so far. The list does not change when more
+     * digests are added.
+     */
+    public List<Sdbf> snapshot() {
+        final int count = size;
+        final Sdbf[][] current = chunks;
+
+        return new AbstractList<Sdbf>() {
+            @Override
+            public Sdbf get(int index) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException(Integer.toString(index));
+                }
+
+                return current[index / CHUNK_SIZE][index % CHUNK_SIZE];
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * A parsed SDBF digest. The bloom filters are kept as 32 longs per 256 byte
+ * filter so that they can be compared with Long.bitCount. The longs are
+ * either decoded onto the heap or read in place from a binary reference set
+ * (see SdbfBinary.Cursor).
+ *
+ * @author pcbje
+ */
+public class Sdbf {
+
+    public static final int WORDS_PER_FILTER = SdbfGenerator.BF_SIZE / 8;
+    private static final String MAGIC_STREAM = "sdbf";
+    private static final String MAGIC_DD = "sdbf-dd";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final String name;
+    private final long size;
+    private final int blockSize;
+    private final int bfCount;
+    private final int[] elemCounts;
+    private final LongBuffer filters;
+    private final int[] hamming;
+
+    /**
+     * For views that override every getter, such as SdbfBinary.Cursor.
+     */
+    Sdbf() {
+        this(null, 0, 0, new int[0], (LongBuffer) null, new int[0]);
+    }
+
+    Sdbf(String name, long size, int blockSize, int[] elemCounts, long[] filters) {
+        this(name, size, blockSize, elemCounts, LongBuffer.wrap(filters), countBits(elemCounts.length, filters));
+    }
+
+    Sdbf(String name, long size, int blockSize, int[] elemCounts, LongBuffer filters, int[] hamming) {
+        this.name = name;
+        this.size = size;
+        this.blockSize = blockSize;
+        this.bfCount = elemCounts.length;
+        this.elemCounts = elemCounts;
+        this.filters = filters;
+        this.hamming = hamming;
+    }
+
+    private static int[] countBits(int bfCount, long[] filters) {
+        int[] hamming = new int[bfCount];
+
+        for (int i = 0; i < bfCount; i++) {
+            int count = 0;
+
+            for (int j = i * WORDS_PER_FILTER; j < (i + 1) * WORDS_PER_FILTER; j++) {
+                count += Long.bitCount(filters[j]);
+            }
+
+            hamming[i] = count;
+        }
+
+        return hamming;
+    }
+
+    /**
+     * Parses a single stream (sdbf) or block (sdbf-dd) digest line.
+     *
+     * @throws IllegalArgumentException if the line is not a valid SDBF
+     */
+    public static Sdbf parse(String line) {
+        try {
+            return parseDigest(line.trim());
+        } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid SDBF", ex);
+        }
+    }
+
+    private static Sdbf parseDigest(String sdbf) {
+        int pos = sdbf.indexOf(':');
+
+        if (pos < 0) {
+            throw new IllegalArgumentException("Invalid SDBF");
+        }
+
+        String magic = sdbf.substring(0, pos);
+
+        if (!MAGIC_STREAM.equals(magic) && !MAGIC_DD.equals(magic)) {
+            throw new IllegalArgumentException(String.format("Not an SDBF: %s", magic));
+        }
+
+        pos = sdbf.indexOf(':', pos + 1);
+        int nameStart = sdbf.indexOf(':', pos + 1) + 1;
+        int nameLength = Integer.parseInt(sdbf.substring(pos + 1, nameStart - 1));
+        int nameEnd = skipUtf8Bytes(sdbf, nameStart, nameLength);
+
+        String name = sdbf.substring(nameStart, nameEnd);
+        String[] fields = sdbf.substring(nameEnd + 1).split(":");
+
+        long size = Long.parseLong(fields[0]);
+        int bfSize = Integer.parseInt(fields[2]);
+        int maxElem = Integer.parseInt(fields[5]);
+        int bfCount = Integer.parseInt(fields[6]);
+
+        if (bfSize != SdbfGenerator.BF_SIZE) {
+            throw new IllegalArgumentException(String.format("Unsupported filter size in %s: %d", name, bfSize));
+        }
+
+        int[] elemCounts = new int[bfCount];
+        long[] filters = new long[bfCount * WORDS_PER_FILTER];
+        int blockSize = 0;
+
+        if (MAGIC_STREAM.equals(magic)) {
+            int lastCount = Integer.parseInt(fields[7]);
+
+            for (int i = 0; i < bfCount; i++) {
+                elemCounts[i] = i < bfCount - 1 ? maxElem : lastCount;
+            }
+
+            decode(fields[8], filters, 0, bfCount);
+        } else {
+            blockSize = Integer.parseInt(fields[7]);
+
+            for (int i = 0; i < bfCount; i++) {
+                elemCounts[i] = Integer.parseInt(fields[8 + i * 2], 16);
+                decode(fields[9 + i * 2], filters, i * WORDS_PER_FILTER, 1);
+            }
+        }
+
+        return new Sdbf(name, size, blockSize, elemCounts, filters);
+    }
+
+    /**
+     * Replaces the name in the header of an SDBF line without touching the
+     * rest of the digest.
+     *
+     * @return the line unchanged if it is not an SDBF
+     */
+    public static String rename(String line, String name) {
+        int pos = line.indexOf(':');
+
+        if (pos < 0 || !line.startsWith(MAGIC_STREAM)) {
+            return line;
+        }
+
+        pos = line.indexOf(':', pos + 1);
+        int nameStart = line.indexOf(':', pos + 1) + 1;
+
+        if (pos < 0 || nameStart <= 0) {
+            return line;
+        }
+
+        int nameEnd = skipUtf8Bytes(line, nameStart, Integer.parseInt(line.substring(pos + 1, nameStart - 1)));
+
+        StringBuilder renamed = new StringBuilder(line.length() + name.length());
+        renamed.append(line, 0, pos + 1);
+        renamed.append(name.getBytes(UTF8).length).append(":").append(name);
+        renamed.append(line, nameEnd, line.length());
+
+        return renamed.toString();
+    }
+
+    /**
+     * @return the name of the segment of a file that starts at the given
+     * offset, in the "name.0064M" form of sdhash. Offsets must be whole MB.
+     */
+    public static String getSegmentName(String name, long offset) {
+        return String.format("%s.%04dM", name, offset >> 20);
+    }
+
+    /**
+     * @return the byte offset of a segment in its file, or -1 if the name is
+     * not the name of a segment
+     */
+    public static long getSegmentOffset(String name) {
+        int dot = name.lastIndexOf('.');
+
+        if (dot < 0 || name.length() - dot < 6 || !name.endsWith("M")) {
+            return -1;
+        }
+
+        for (int i = dot + 1; i < name.length() - 1; i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return -1;
+            }
+        }
+
+        return Long.parseLong(name.substring(dot + 1, name.length() - 1)) << 20;
+    }
+
+    /**
+     * @return the name of the file that a segment belongs to, or the name
+     * itself if it is not a segment
+     */
+    public static String getBaseName(String name) {
+        return getSegmentOffset(name) >= 0 ? name.substring(0, name.lastIndexOf('.')) : name;
+    }
+
+    /**
+     * @return true if the line is a block mode (sdbf-dd) digest
+     */
+    public static boolean isBlockDigest(String line) {
+        return line.startsWith(MAGIC_DD + ":");
+    }
+
+    /**
+     * Parses every digest in an SDBF file, one digest per line.
+     */
+    public static List<Sdbf> parseFile(File file) throws IOException {
+        List<Sdbf> sdbfs = new ArrayList<>();
+
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        try {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() > 0) {
+                    sdbfs.add(parse(line));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return sdbfs;
+    }
+
+    /**
+     * Parses every digest in a string of newline separated digests.
+     */
+    public static List<Sdbf> parseAll(String sdbfs) {
+        List<Sdbf> result = new ArrayList<>();
+
+        for (String line : sdbfs.split("\n")) {
+            if (line.trim().length() > 0) {
+                result.add(parse(line));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the data does not hold exactly the
+     * given number of filters, such as when the line was cut off
+     */
+    private static void decode(String base64, long[] filters, int offset, int count) {
+        ByteBuffer bytes = ByteBuffer.wrap(DatatypeConverter.parseBase64Binary(base64));
+
+        if (bytes.remaining() != count * SdbfGenerator.BF_SIZE) {
+            throw new IllegalArgumentException(String.format("Expected %d bytes of filters, found %d", count * SdbfGenerator.BF_SIZE, bytes.remaining()));
+        }
+
+        bytes.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(filters, offset, bytes.remaining() / 8);
+    }
+
+    private static int skipUtf8Bytes(String string, int start, int bytes) {
+        int pos = start;
+
+        while (bytes > 0) {
+            char c = string.charAt(pos);
+
+            if (c < 0x80) {
+                bytes -= 1;
+            } else if (c < 0x800) {
+                bytes -= 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes -= 4;
+                pos++;
+            } else {
+                bytes -= 3;
+            }
+
+            pos++;
+        }
+
+        return pos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the size of the block that each filter of a block mode (sdbf-dd)
+     * digest covers, or 0 for a stream digest
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getBfCount() {
+        return bfCount;
+    }
+
+    public int getElemCount(int index) {
+        return elemCounts[index];
+    }
+
+    public int getHamming(int index) {
+        return hamming[index];
+    }
+
+    /**
+     * @return a word of the filters, which are WORDS_PER_FILTER longs per
+     * filter
+     */
+    long getWord(int index) {
+        return filters.get(index);
+    }
+
+    /**
+     * @return the filters as WORDS_PER_FILTER longs per filter. Only use
+     * absolute gets, the buffer is shared between threads.
+     */
+    LongBuffer getFilters() {
+        return filters;
+    }
+}
@@ -0,0 +1,449 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Binary copy of a text reference set that is memory mapped instead of
+ * parsed. The file has a 64 byte header, the raw bloom filters starting at
+ * byte 64, and a table of contents after the filters:
+ *
+ * <pre>
+ * header:   "AHBMSDBF" version:int digests:int tocOffset:long
+ *           maxLength:long sourceSize:long sourceModified:long sourceMd5:16 bytes
+ * filters:  256 bytes per filter, in the byte order of sdhash
+ * toc:      per digest: name:UTF size:long offset:long blockSize:int
+ *           bfCount:int and per filter: elemCount:short hamming:short
+ * </pre>
+ *
+ * The header and table of contents are big endian (DataOutput). Every filter
+ * starts on a 64 byte boundary so that the words can be read in place as
+ * little endian longs. maxLength is the size of the largest digest's filters,
+ * so that every digest fits in one of the overlapping windows that the
+ * filters are mapped with. sourceSize, sourceModified and sourceMd5 identify
+ * the text set that the copy was written from.
+ *
+ * @author pcbje
+ */
+public class SdbfBinary {
+
+    public static final String EXTENSION = ".sdbfb";
+    private static final byte[] MAGIC = "AHBMSDBF".getBytes(Charset.forName("US-ASCII"));
+    private static final int VERSION = 4;
+    private static final int HEADER_SIZE = 64;
+    private static final int SOURCE_MODIFIED_OFFSET = 40;
+    private static final long WINDOW_STRIDE = 1L << 30;
+    private final int digests;
+    private final ByteBuffer toc;
+    private final LongBuffer[] windows;
+
+    private SdbfBinary(int digests, ByteBuffer toc, LongBuffer[] windows) {
+        this.digests = digests;
+        this.toc = toc;
+        this.windows = windows;
+    }
+
+    /**
+     * Converts a text reference set, one digest at a time. The table of
+     * contents is written to a temporary file next to the binary and appended
+     * after the filters.
+     */
+    public static void write(File referenceSet, File binary) throws IOException {
+        File tmp = new File(binary.getPath() + ".tmp");
+        File tocTmp = new File(binary.getPath() + ".toc.tmp");
+        MessageDigest md5 = getMd5();
+        ByteBuffer filter = ByteBuffer.allocate(SdbfGenerator.BF_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long sourceSize = referenceSet.length();
+        long sourceModified = referenceSet.lastModified();
+        int digests = 0;
+        long offset = HEADER_SIZE;
+        long maxLength = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new DigestInputStream(new FileInputStream(referenceSet), md5)));
+        OutputStream out = null;
+        DataOutputStream tocOut = null;
+
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16);
+            tocOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tocTmp), 1 << 16));
+
+            out.write(new byte[HEADER_SIZE]);
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+
+                Sdbf sdbf = Sdbf.parse(line);
+
+                tocOut.writeUTF(sdbf.getName());
+                tocOut.writeLong(sdbf.getSize());
+                tocOut.writeLong(offset);
+                tocOut.writeInt(sdbf.getBlockSize());
+                tocOut.writeInt(sdbf.getBfCount());
+
+                for (int i = 0; i < sdbf.getBfCount(); i++) {
+                    tocOut.writeShort(sdbf.getElemCount(i));
+                    tocOut.writeShort(sdbf.getHamming(i));
+
+                    filter.clear();
+
+                    for (int j = 0; j < Sdbf.WORDS_PER_FILTER; j++) {
+                        filter.putLong(sdbf.getWord(i * Sdbf.WORDS_PER_FILTER + j));
+                    }
+
+                    out.write(filter.array());
+                }
+
+                long length = (long) sdbf.getBfCount() * SdbfGenerator.BF_SIZE;
+
+                offset += length;
+                maxLength = Math.max(maxLength, length);
+                digests++;
+            }
+
+            tocOut.close();
+            tocOut = null;
+
+            Files.copy(tocTmp.toPath(), out);
+        } finally {
+            reader.close();
+
+            if (tocOut != null) {
+                tocOut.close();
+            }
+
+            if (out != null) {
+                out.close();
+            }
+
+            tocTmp.delete();
+        }
+
+        RandomAccessFile header = new RandomAccessFile(tmp, "rw");
+
+        try {
+            header.write(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(digests);
+            header.writeLong(offset);
+            header.writeLong(maxLength);
+            header.writeLong(sourceSize);
+            header.writeLong(sourceModified);
+            header.write(md5.digest());
+        } finally {
+            header.close();
+        }
+
+        if (binary.exists() && !binary.delete()) {
+            throw new IOException(String.format("Could not replace %s", binary.getAbsolutePath()));
+        }
+
+        if (!tmp.renameTo(binary)) {
+            throw new IOException(String.format("Could not create %s", binary.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * @return true if the binary was written by this version from a reference
+     * set with the same size and MD5 as the current one. The reference set is
+     * not read if its size and modification time are the ones in the header,
+     * and it is only hashed if the size matches. When a set was only touched,
+     * its new modification time is written to the header, so that it is
+     * hashed once rather than on every load.
+     */
+    public static boolean isUpToDate(File binary, File referenceSet) {
+        if (!binary.exists() || !referenceSet.exists()) {
+            return false;
+        }
+
+        try {
+            DataInputStream header = new DataInputStream(new FileInputStream(binary));
+            byte[] sourceMd5 = new byte[16];
+            long sourceSize;
+            long sourceModified;
+
+            try {
+                byte[] magic = new byte[MAGIC.length];
+                header.readFully(magic);
+
+                if (!Arrays.equals(MAGIC, magic) || header.readInt() != VERSION) {
+                    return false;
+                }
+
+                header.readInt();
+                header.readLong();
+                header.readLong();
+                sourceSize = header.readLong();
+                sourceModified = header.readLong();
+                header.readFully(sourceMd5);
+            } finally {
+                header.close();
+            }
+
+            if (sourceSize != referenceSet.length()) {
+                return false;
+            }
+
+            long modified = referenceSet.lastModified();
+
+            if (sourceModified == modified) {
+                return true;
+            }
+
+            if (!Arrays.equals(sourceMd5, md5(referenceSet))) {
+                return false;
+            }
+
+            setSourceModified(binary, modified);
+
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private static void setSourceModified(File binary, long modified) throws IOException {
+        RandomAccessFile header = new RandomAccessFile(binary, "rw");
+
+        try {
+            header.seek(SOURCE_MODIFIED_OFFSET);
+            header.writeLong(modified);
+        } finally {
+            header.close();
+        }
+    }
+
+    private static byte[] md5(File file) throws IOException {
+        MessageDigest md5 = getMd5();
+        byte[] buffer = new byte[1 << 16];
+
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+        try {
+            int read;
+
+            while ((read = in.read(buffer)) > 0) {
+                md5.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+
+        return md5.digest();
+    }
+
+    private static MessageDigest getMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Maps a binary reference set. Nothing is decoded until the set is walked
+     * with a Cursor, and the filters are never copied out of the mapping.
+     *
+     * @throws IllegalArgumentException if the file is not a binary set of
+     * this version
+     */
+    public static SdbfBinary open(File binary) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(binary, "r");
+
+        try {
+            FileChannel channel = file.getChannel();
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+
+            if (!Arrays.equals(MAGIC, magic) || header.getInt() != VERSION) {
+                throw new IllegalArgumentException(String.format("Not a binary SDBF set: %s", binary.getAbsolutePath()));
+            }
+
+            int digests = header.getInt();
+            long tocOffset = header.getLong();
+            long maxLength = header.getLong();
+
+            if (WINDOW_STRIDE + maxLength > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(String.format("Digest too large to map in %s", binary.getAbsolutePath()));
+            }
+
+            ByteBuffer toc = channel.map(FileChannel.MapMode.READ_ONLY, tocOffset, channel.size() - tocOffset);
+            LongBuffer[] windows = new LongBuffer[(int) ((tocOffset - HEADER_SIZE + WINDOW_STRIDE - 1) / WINDOW_STRIDE)];
+
+            for (int i = 0; i < windows.length; i++) {
+                long start = HEADER_SIZE + i * WINDOW_STRIDE;
+
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_STRIDE + maxLength, tocOffset - start))
+                        .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            }
+
+            return new SdbfBinary(digests, toc, windows);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return the number of digests in the set
+     */
+    public int size() {
+        return digests;
+    }
+
+    /**
+     * @return a new cursor before the first digest. Cursors are not thread
+     * safe, but any number of them can walk the same set.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A digest of the set that moves through the table of contents. The
+     * getters read the mapping in place, so the only thing decoded per digest
+     * is the name, and only when it is asked for.
+     */
+    public class Cursor extends Sdbf {
+
+        private final ByteBuffer entries = toc.duplicate();
+        private int remaining = digests;
+        private int nameStart;
+        private String name;
+        private long size;
+        private int blockSize;
+        private int bfCount;
+        private int counts;
+        private LongBuffer window;
+        private int base;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the next digest.
+         *
+         * @return false if there are no more digests
+         */
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+
+            remaining--;
+            nameStart = entries.position();
+            name = null;
+
+            entries.position(nameStart + 2 + (entries.getShort(nameStart) & 0xFFFF));
+            size = entries.getLong();
+            long offset = entries.getLong() - HEADER_SIZE;
+            blockSize = entries.getInt();
+            bfCount = entries.getInt();
+            counts = entries.position();
+            entries.position(counts + bfCount * 4);
+
+            window = windows.length > 0 ? windows[(int) (offset / WINDOW_STRIDE)] : null;
+            base = (int) (offset % WINDOW_STRIDE / 8);
+
+            return true;
+        }
+
+        @Override
+        public String getName() {
+            if (name == null) {
+                byte[] bytes = new byte[2 + (entries.getShort(nameStart) & 0xFFFF)];
+
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = entries.get(nameStart + i);
+                }
+
+                try {
+                    name = new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+                } catch (IOException ex) {
+                    throw new IllegalArgumentException("Invalid SDBF name", ex);
+                }
+            }
+
+            return name;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        @Override
+        public int getBfCount() {
+            return bfCount;
+        }
+
+        @Override
+        public int getElemCount(int index) {
+            return entries.getShort(counts + index * 4);
+        }
+
+        @Override
+        public int getHamming(int index) {
+            return entries.getShort(counts + index * 4 + 2);
+        }
+
+        @Override
+        long getWord(int index) {
+            return window.get(base + index);
+        }
+
+        @Override
+        LongBuffer getFilters() {
+            LongBuffer filters = window.duplicate();
+            filters.position(base);
+            filters.limit(base + bfCount * WORDS_PER_FILTER);
+
+            return filters.slice();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ * SDBFs of files that have already been hashed, keyed by the MD5 and size of
+ * the file. The MD5 is the one the hash lookup module stores on the file, so
+ * files it has not seen are not cached. The SDBFs are not kept on the heap:
+ * they are records of the SdbfStore of the case, written once with both the
+ * object ID and the key, and found by later jobs through the store. Match
+ * results are only kept for the current job, since stream sets can change
+ * between jobs, and only for the most recently used keys.
+ *
+ * @author pcbje
+ */
+public class SdbfCache {
+
+    public static final int DEFAULT_MATCH_CAPACITY = 10000;
+    private final Map<String, List<SdbfMatch>> matches;
+    private final SdbfStore store;
+
+    public SdbfCache(SdbfStore store) {
+        this(store, DEFAULT_MATCH_CAPACITY);
+    }
+
+    public SdbfCache(SdbfStore store, final int matchCapacity) {
+        this.store = store;
+        this.matches = new LinkedHashMap<String, List<SdbfMatch>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<SdbfMatch>> eldest) {
+                return size() > matchCapacity;
+            }
+        };
+    }
+
+    /**
+     * @return the cache key of the content, or null if it has no MD5
+     */
+    public static String getKey(Content content) {
+        if (!(content instanceof AbstractFile)) {
+            return null;
+        }
+
+        String md5 = ((AbstractFile) content).getMd5Hash();
+
+        if (md5 == null || md5.trim().isEmpty()) {
+            return null;
+        }
+
+        return md5.trim().toLowerCase() + ":" + content.getSize();
+    }
+
+    /**
+     * @return the cached SDBF renamed to the given name, or null if there is
+     * none
+     */
+    public String getSdbf(String key, String name) throws IOException {
+        String sdbf = store.get(key);
+
+        if (sdbf == null) {
+            return null;
+        }
+
+        return Sdbf.rename(sdbf.trim(), name) + "\n";
+    }
+
+    public boolean contains(String key) {
+        return store.contains(key);
+    }
+
+    /**
+     * Stores the SDBF of an object. Only single line SDBFs are stored under
+     * the key, others can only be found by object ID.
+     */
+    public void putSdbf(long objId, String key, String sdbf) throws IOException {
+        String line = sdbf.trim();
+
+        if (line.isEmpty() || line.indexOf('\n') >= 0 || store.contains(key)) {
+            store.put(objId, sdbf);
+        } else {
+            store.put(objId, key, sdbf);
+        }
+    }
+    /**
+     * @return the matches of an earlier file with the same content, as
+     * matches of the given probe, or null if there are none
+     */
+    public List<SdbfMatch> getMatches(String key, String probeName) {
+        List<SdbfMatch> cached;
+
+        synchronized (matches) {
+            cached = matches.get(key);
+        }
+
+        if (cached == null) {
+            return null;
+        }
+
+        List<SdbfMatch> results = new ArrayList<>(cached.size());
+
+        for (SdbfMatch match : cached) {
+            results.add(match.withProbe(probeName));
+        }
+
+        return results;
+    }
+
+    /**
+     * Caches the matches of a probe for later files with the same content.
+     */
+    public void putMatches(String key, List<SdbfMatch> results) {
+        List<SdbfMatch> copy = new ArrayList<>(results);
+
+        synchronized (matches) {
+            matches.put(key, copy);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process replacement for "sdhash -c". Reference sets are parsed once and
+ * kept in memory, and probes are scored with the same bloom filter similarity
+ * as sdhash 3.x.
+ *
+ * @author pcbje
+ */
+public class SdbfComparator {
+
+    public static final int MIN_ELEM_COUNT = 16;
+    private static final double SD_SCORE_SCALE = 0.3;
+    private static final int THRESHOLD = 1;
+    private final Map<File, List<Sdbf>> referenceSets = new ConcurrentHashMap<>();
+    private final Map<File, SdbfBinary> binarySets = new ConcurrentHashMap<>();
+
+    /**
+     * Parses a reference set unless it is already loaded.
+     */
+    public List<Sdbf> load(File referenceSet) throws IOException {
+        List<Sdbf> sdbfs = referenceSets.get(referenceSet);
+
+        if (sdbfs == null) {
+            sdbfs = Sdbf.parseFile(referenceSet);
+            referenceSets.put(referenceSet, sdbfs);
+        }
+
+        return sdbfs;
+    }
+
+    /**
+     * Maps the binary copy of a reference set, which must be up to date (see
+     * SdbfBinary.isUpToDate), or parses the text set if there is no binary
+     * copy. Results are still reported with the path of the text set.
+     */
+    public void load(File referenceSet, File binary) throws IOException {
+        if (binary == null) {
+            load(referenceSet);
+        } else if (!binarySets.containsKey(referenceSet)) {
+            binarySets.put(referenceSet, SdbfBinary.open(binary));
+        }
+    }
+
+    public void unload(File referenceSet) {
+        referenceSets.remove(referenceSet);
+        binarySets.remove(referenceSet);
+    }
+
+    /**
+     * Compares every probe with every digest in the reference set.
+     *
+     * @return the matches in the same probe|match|score|set format as
+     * Sdhash.compareSets
+     */
+    public String compareSets(Collection<Sdbf> probes, File referenceSet) throws IOException {
+        StringBuilder scores = new StringBuilder();
+
+        compareSets(probes, referenceSet, append(scores));
+
+        return scores.toString();
+    }
+
+    /**
+     * Compares every probe with every digest in the reference set and hands
+     * the matches to the handler as they are found. A mapped binary set is
+     * walked with a cursor instead of being decoded. Stops with an
+     * InterruptedIOException when the thread is interrupted.
+     */
+    public void compareSets(Collection<Sdbf> probes, File referenceSet, SdbfMatch.Handler handler) throws IOException {
+        SdbfBinary binary = binarySets.get(referenceSet);
+
+        if (binary != null) {
+            for (Sdbf probe : probes) {
+                SdbfBinary.Cursor reference = binary.cursor();
+
+                while (reference.next()) {
+                    checkInterrupted();
+                    handleScore(handler, probe, reference, referenceSet);
+                }
+            }
+
+            return;
+        }
+
+        List<Sdbf> references = load(referenceSet);
+
+        for (Sdbf probe : probes) {
+            for (Sdbf reference : references) {
+                checkInterrupted();
+                handleScore(handler, probe, reference, referenceSet);
+            }
+        }
+    }
+
+    /**
+     * Compares every probe with a list of digests that is not loaded from
+     * a file, such as a snapshot of the OpenCaseIndex. A probe is not compared
+     * with digests of the same name, so a file does not match itself, nor
+     * with other segments of the same file.
+     *
+     * @param referenceSet the set that is reported with the matches
+     */
+    public String compareSets(Collection<Sdbf> probes, List<Sdbf> references, File referenceSet) throws InterruptedIOException {
+        StringBuilder scores = new StringBuilder();
+
+        compareSets(probes, references, referenceSet, append(scores));
+
+        return scores.toString();
+    }
+
+    public void compareSets(Collection<Sdbf> probes, List<Sdbf> references, File referenceSet, SdbfMatch.Handler handler) throws InterruptedIOException {
+        for (Sdbf probe : probes) {
+            String probeFile = Sdbf.getBaseName(probe.getName());
+
+            for (Sdbf reference : references) {
+                checkInterrupted();
+
+                if (!probeFile.equals(Sdbf.getBaseName(reference.getName()))) {
+                    handleScore(handler, probe, reference, referenceSet);
+                }
+            }
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Comparison cancelled");
+        }
+    }
+
+    private static void handleScore(SdbfMatch.Handler handler, Sdbf probe, Sdbf reference, File referenceSet) {
+        int[] blocks = new int[2];
+        int score = score(probe, reference, blocks);
+
+        if (score >= THRESHOLD) {
+            handler.handle(new SdbfMatch(probe.getName(), reference.getName(), score, referenceSet,
+                    (long) blocks[0] * probe.getBlockSize(), (long) blocks[1] * reference.getBlockSize()));
+        }
+    }
+
+    private static SdbfMatch.Handler append(final StringBuilder scores) {
+        return new SdbfMatch.Handler() {
+            @Override
+            public void handle(SdbfMatch match) {
+                scores.append(match).append("\n");
+            }
+        };
+    }
+
+    /**
+     * @return the similarity score between 0 and 100, or -1 if the digests
+     * cannot be compared
+     */
+    public static int score(Sdbf sdbf1, Sdbf sdbf2) {
+        return score(sdbf1, sdbf2, null);
+    }
+
+    /**
+     * @param blocks if not null, receives the index of the filter of sdbf1 and
+     * of sdbf2 in the pair of filters that scored highest
+     */
+    static int score(Sdbf sdbf1, Sdbf sdbf2, int[] blocks) {
+        boolean swapped = false;
+
+        if (sdbf1.getBfCount() > sdbf2.getBfCount()
+                || (sdbf1.getBfCount() == sdbf2.getBfCount()
+                && (lastElemCount(sdbf1) > lastElemCount(sdbf2)
+                || (lastElemCount(sdbf1) == lastElemCount(sdbf2)
+                && sdbf1.getName().compareTo(sdbf2.getName()) > 0)))) {
+            Sdbf tmp = sdbf1;
+            sdbf1 = sdbf2;
+            sdbf2 = tmp;
+            swapped = true;
+        }
+
+        double scoreSum = -1;
+        int sparse = 0;
+        double bestScore = 0;
+        int best1 = 0;
+        int best2 = 0;
+        int[] index2 = new int[1];
+
+        for (int i = 0; i < sdbf1.getBfCount(); i++) {
+            double maxScore = maxScore(sdbf1, i, sdbf2, index2);
+
+            scoreSum = scoreSum < 0 ? maxScore : scoreSum + maxScore;
+
+            if (maxScore > bestScore) {
+                bestScore = maxScore;
+                best1 = i;
+                best2 = index2[0];
+            }
+
+            if (sdbf1.getElemCount(i) < MIN_ELEM_COUNT) {
+                sparse++;
+            }
+        }
+
+        if (blocks != null) {
+            blocks[0] = swapped ? best2 : best1;
+            blocks[1] = swapped ? best1 : best2;
+        }
+
+        int denom = sdbf1.getBfCount();
+
+        if (denom > 1) {
+            denom -= sparse;
+        }
+
+        if (denom == 0 || scoreSum < 0) {
+            return -1;
+        }
+
+        return (int) Math.round(100.0 * scoreSum / denom);
+    }
+
+    /**
+     * @param best receives the index of the filter of sdbf2 with the highest
+     * score
+     */
+    private static double maxScore(Sdbf sdbf1, int index, Sdbf sdbf2, int[] best) {
+        int s1 = sdbf1.getElemCount(index);
+
+        if (s1 < MIN_ELEM_COUNT) {
+            return 0;
+        }
+
+        long[] filter1 = new long[Sdbf.WORDS_PER_FILTER];
+        int offset1 = index * Sdbf.WORDS_PER_FILTER;
+
+        for (int j = 0; j < Sdbf.WORDS_PER_FILTER; j++) {
+            filter1[j] = sdbf1.getWord(offset1 + j);
+        }
+        int e1 = sdbf1.getHamming(index);
+
+        double maxScore = -1;
+
+        for (int i = 0; i < sdbf2.getBfCount(); i++) {
+            int s2 = sdbf2.getElemCount(i);
+
+            if (s2 < MIN_ELEM_COUNT) {
+                continue;
+            }
+
+            int e2 = sdbf2.getHamming(i);
+            int maxEst = Math.min(e1, e2);
+            int minEst = matchEstimate(SdbfGenerator.BF_SIZE * 8, SdbfGenerator.HASH_COUNT, s1, s2);
+            int cutOff = (int) (SD_SCORE_SCALE * (maxEst - minEst) + minEst);
+
+            int match = 0;
+            int offset2 = i * Sdbf.WORDS_PER_FILTER;
+
+            for (int j = 0; j < Sdbf.WORDS_PER_FILTER; j++) {
+                match += Long.bitCount(filter1[j] & sdbf2.getWord(offset2 + j));
+            }
+
+            double score = match <= cutOff ? 0 : (double) (match - cutOff) / (maxEst - cutOff);
+
+            if (score > maxScore) {
+                maxScore = score;
+                best[0] = i;
+            }
+        }
+
+        return maxScore;
+    }
+
+    /**
+     * @return the expected number of common bits in two filters of m bits
+     * with s1 and s2 random elements of k hashes each
+     */
+    private static int matchEstimate(int m, int k, int s1, int s2) {
+        double ex = 1 - 1.0 / m;
+
+        return (int) Math.round(m * (1 - Math.pow(ex, k * s1) - Math.pow(ex, k * s2) + Math.pow(ex, k * (s1 + s2))));
+    }
+
+    private static int lastElemCount(Sdbf sdbf) {
+        return sdbf.getElemCount(sdbf.getBfCount() - 1);
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * In-process replacement for running the sdhash binary on a single file. The
+ * output is the same stream mode SDBF that sdhash 3.x prints: features are
+ * selected by entropy rank over 64 byte windows (like
+ * BuflDiff.compactGetFeatures) and the SHA-1 of each feature is inserted into
+ * 256 byte bloom filters. Large content can instead be digested in block
+ * mode, where every fixed size block gets a filter of its own (like
+ * "sdhash -b").
+ *
+ * @author pcbje
+ */
+public class SdbfGenerator {
+
+    public static final int MIN_FILE_SIZE = 512;
+    public static final int BF_SIZE = 256;
+    public static final int HASH_COUNT = 5;
+    public static final int BIT_MASK = 0x7FF;
+    public static final int MAX_ELEM = 160;
+    public static final int MAX_ELEM_DD = 192;
+    public static final int DD_BLOCK_SIZE = 16 * 1024;
+    private static final int POP_WINDOW = Entropy64.WINDOW_SIZE;
+    private static final int SYNC_BLOCK = 4096;
+    private static final int THRESHOLD = 16;
+    private static final int MAX_SCORE = POP_WINDOW + 1;
+    private static final int CHUNK_SIZE = 32 * 1024 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final MessageDigest sha1;
+    private final int[] ascii = new int[256];
+    private int[] ranks = new int[0];
+    private int[] scores = new int[0];
+    private byte[] filters;
+    private int bfCount;
+    private int lastCount;
+
+    public SdbfGenerator() {
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Generates the SDBF of the first length bytes in data. Instances are not
+     * thread safe.
+     *
+     * @return the SDBF including the trailing "\n", or an empty
+     * string if the data is smaller than sdhash's minimum file size
+     */
+    public String generate(String name, byte[] data, int length) {
+        if (length < MIN_FILE_SIZE) {
+            return "";
+        }
+
+        filters = new byte[((length >> 11) + 1) << 8];
+        bfCount = 1;
+        lastCount = 0;
+
+        for (int chunkPos = 0; chunkPos < length; chunkPos += CHUNK_SIZE) {
+            int chunkSize = Math.min(CHUNK_SIZE, length - chunkPos);
+
+            if (chunkSize > POP_WINDOW) {
+                generateChunkRanks(data, chunkPos, chunkSize);
+                generateChunkScores(chunkSize);
+                generateChunkHash(data, chunkPos, chunkSize);
+            }
+        }
+
+        if (bfCount > 1 && lastCount < MAX_ELEM / 8) {
+            bfCount--;
+            lastCount = MAX_ELEM;
+        }
+
+        byte[] nameBytes = name.getBytes(UTF8);
+
+        StringBuilder sdbf = new StringBuilder();
+        sdbf.append("sdbf:03:").append(nameBytes.length).append(":").append(name);
+        sdbf.append(":").append(length).append(":sha1:").append(BF_SIZE).append(":").append(HASH_COUNT);
+        sdbf.append(":").append(Integer.toHexString(BIT_MASK)).append(":").append(MAX_ELEM);
+        sdbf.append(":").append(bfCount).append(":").append(lastCount).append(":");
+        sdbf.append(DatatypeConverter.printBase64Binary(Arrays.copyOf(filters, bfCount * BF_SIZE)));
+        sdbf.append("\n");
+
+        filters = null;
+
+        return sdbf.toString();
+    }
+
+    /**
+     * Generates a block mode (sdbf-dd) SDBF of the first length bytes in data.
+     * The ranks and scores of each block are computed within the block, so
+     * only one block size of work memory is needed besides the filters.
+     *
+     * @return the SDBF including the trailing "\n", or an empty
+     * string if the data is smaller than sdhash's minimum file size
+     */
+    public String generateBlocks(String name, byte[] data, int length, int blockSize) {
+        if (length < MIN_FILE_SIZE) {
+            return "";
+        }
+
+        int blockCount = (length + blockSize - 1) / blockSize;
+        byte[] nameBytes = name.getBytes(UTF8);
+
+        StringBuilder sdbf = new StringBuilder(64 + blockCount * (BF_SIZE * 4 / 3 + 8));
+        sdbf.append("sdbf-dd:03:").append(nameBytes.length).append(":").append(name);
+        sdbf.append(":").append(length).append(":sha1:").append(BF_SIZE).append(":").append(HASH_COUNT);
+        sdbf.append(":").append(Integer.toHexString(BIT_MASK)).append(":").append(MAX_ELEM_DD);
+        sdbf.append(":").append(blockCount).append(":").append(blockSize);
+
+        filters = new byte[BF_SIZE];
+
+        for (int blockPos = 0; blockPos < length; blockPos += blockSize) {
+            int size = Math.min(blockSize, length - blockPos);
+            int count = 0;
+
+            Arrays.fill(filters, (byte) 0);
+
+            if (size > POP_WINDOW) {
+                generateChunkRanks(data, blockPos, size);
+                generateChunkScores(size);
+                count = generateBlockHash(data, blockPos, size);
+            }
+
+            sdbf.append(":").append(String.format("%02x", count));
+            sdbf.append(":").append(DatatypeConverter.printBase64Binary(filters));
+        }
+
+        sdbf.append("\n");
+
+        filters = null;
+
+        return sdbf.toString();
+    }
+
+    private void generateChunkRanks(byte[] data, int offset, int chunkSize) {
+        if (ranks.length < chunkSize + POP_WINDOW + 1) {
+            ranks = new int[chunkSize + POP_WINDOW + 1];
+            scores = new int[chunkSize + POP_WINDOW + 1];
+        }
+
+        Arrays.fill(ranks, 0);
+
+        long entropy = 0;
+
+        for (int i = 0; i < chunkSize - Entropy64.WINDOW_SIZE; i++) {
+            if (i % SYNC_BLOCK == 0) {
+                entropy = Entropy64.init(data, offset + i, ascii);
+            } else {
+                entropy = Entropy64.increment(entropy, data, offset + i - 1, ascii);
+            }
+
+            ranks[i] = Entropy64.rank(entropy);
+        }
+    }
+
+    private void generateChunkScores(int chunkSize) {
+        Arrays.fill(scores, 0);
+
+        int minPos = 0;
+        int minRank = ranks[minPos];
+
+        for (int i = 0; i < chunkSize - POP_WINDOW; i++) {
+            if (i > 0 && minRank > 0) {
+                while (ranks[i + POP_WINDOW] >= minRank && i < minPos && i < chunkSize - POP_WINDOW + 1) {
+                    if (ranks[i + POP_WINDOW] == minRank) {
+                        minPos = i + POP_WINDOW;
+                    }
+
+                    scores[minPos]++;
+                    i++;
+                }
+            }
+
+            minPos = i;
+            minRank = ranks[minPos];
+
+            for (int j = i + 1; j < i + POP_WINDOW; j++) {
+                if (ranks[j] < minRank && ranks[j] > 0) {
+                    minRank = ranks[j];
+                    minPos = j;
+                } else if (minPos == j - 1 && ranks[j] == minRank) {
+                    minPos = j;
+                }
+            }
+
+            if (ranks[minPos] > 0) {
+                scores[minPos]++;
+            }
+        }
+    }
+
+    private void generateChunkHash(byte[] data, int chunkPos, int chunkSize) {
+        for (int i = 0; i < chunkSize - POP_WINDOW; i++) {
+            if (scores[i] <= THRESHOLD) {
+                continue;
+            }
+
+            sha1.update(data, chunkPos + i, POP_WINDOW);
+
+            if (insert(sha1.digest(), (bfCount - 1) * BF_SIZE) == 0) {
+                continue;
+            }
+
+            lastCount++;
+
+            if (lastCount == MAX_ELEM) {
+                bfCount++;
+                lastCount = 0;
+
+                if (filters.length < bfCount * BF_SIZE) {
+                    filters = Arrays.copyOf(filters, filters.length * 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the features of one block into the first filter. Like sdhash,
+     * the threshold is chosen per block from a histogram of the scores: the
+     * features with the highest scores are taken until MAX_ELEM_DD would be
+     * exceeded, and of the features with the score where that happens only
+     * as many as still fit, in the order they appear in the block. The
+     * threshold does not drop below the one of stream mode.
+     *
+     * @return the number of features in the filter
+     */
+    private int generateBlockHash(byte[] data, int blockPos, int blockSize) {
+        int[] histogram = new int[MAX_SCORE + 1];
+
+        for (int i = 0; i < blockSize - POP_WINDOW; i++) {
+            histogram[scores[i]]++;
+        }
+
+        int allowed = MAX_ELEM_DD;
+        int threshold;
+
+        for (threshold = MAX_SCORE; threshold > THRESHOLD; threshold--) {
+            if (allowed <= histogram[threshold]) {
+                break;
+            }
+
+            allowed -= histogram[threshold];
+        }
+
+        int count = 0;
+
+        for (int i = 0; i < blockSize - POP_WINDOW; i++) {
+            if (scores[i] < threshold || (scores[i] == threshold && allowed == 0)) {
+                continue;
+            }
+
+            sha1.update(data, blockPos + i, POP_WINDOW);
+
+            if (insert(sha1.digest(), 0) == 0) {
+                continue;
+            }
+
+            count++;
+
+            if (scores[i] == threshold) {
+                allowed--;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Sets the five 11 bit positions taken from the little endian words of the
+     * SHA-1 digest.
+     *
+     * @return the number of bits that were not already set
+     */
+    private int insert(byte[] hash, int bfOffset) {
+        int inserted = 0;
+
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int word = (hash[i * 4] & 0xFF) | (hash[i * 4 + 1] & 0xFF) << 8;
+            int bit = word & BIT_MASK;
+            int mask = 1 << (bit & 0x7);
+            int index = bfOffset + (bit >> 3);
+
+            if ((filters[index] & mask) == 0) {
+                inserted++;
+                filters[index] |= mask;
+            }
+        }
+
+        return inserted;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+
+/**
+ * One match from comparing probes with a reference set: the name of the
+ * probe, the name of the digest it matched, the score and the set. Matches
+ * between block mode digests also have the offsets of the best matching
+ * blocks within the two digests.
+ *
+ * @author pcbje
+ */
+public class SdbfMatch {
+
+    /**
+     * Receives matches as they are found.
+     */
+    public interface Handler {
+
+        void handle(SdbfMatch match);
+    }
+
+    private final String probe;
+    private final String match;
+    private final int score;
+    private final File referenceSet;
+    private final long probeOffset;
+    private final long matchOffset;
+
+    public SdbfMatch(String probe, String match, int score, File referenceSet) {
+        this(probe, match, score, referenceSet, 0, 0);
+    }
+
+    public SdbfMatch(String probe, String match, int score, File referenceSet, long probeOffset, long matchOffset) {
+        this.probe = probe;
+        this.match = match;
+        this.score = score;
+        this.referenceSet = referenceSet;
+        this.probeOffset = probeOffset;
+        this.matchOffset = matchOffset;
+    }
+
+    public String getProbe() {
+        return probe;
+    }
+
+    public String getMatch() {
+        return match;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public File getReferenceSet() {
+        return referenceSet;
+    }
+
+    /**
+     * @return the offset of the best matching block within the probe digest,
+     * 0 if it is not a block mode digest
+     */
+    public long getProbeOffset() {
+        return probeOffset;
+    }
+
+    /**
+     * @return the offset of the best matching block within the matched
+     * digest, 0 if it is not a block mode digest
+     */
+    public long getMatchOffset() {
+        return matchOffset;
+    }
+
+    /**
+     * @return the same match found for another probe
+     */
+    public SdbfMatch withProbe(String probe) {
+        return new SdbfMatch(probe, match, score, referenceSet, probeOffset, matchOffset);
+    }
+
+    /**
+     * @return the match in the probe|match|score|set format of "sdhash -c"
+     * with the set appended
+     */
+    @Override
+    public String toString() {
+        return String.format("%s|%s|%03d|%s", probe, match, score, referenceSet.getAbsolutePath());
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+/**
+ * Parses the probe|match|score lines of "sdhash -c" as they are read from
+ * the worker. Only the two names are decoded into Strings, and the probe name
+ * is reused while consecutive lines have the same probe. Lines that are not
+ * matches, such as warnings, are ignored.
+ *
+ * @author pcbje
+ */
+public class SdbfMatchParser implements SdhashWorkerPool.Output {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final File referenceSet;
+    private final SdbfMatch.Handler handler;
+    private byte[] probeBytes = new byte[0];
+    private String probe;
+
+    public SdbfMatchParser(File referenceSet, SdbfMatch.Handler handler) {
+        this.referenceSet = referenceSet;
+        this.handler = handler;
+    }
+
+    @Override
+    public void handle(byte[] line, int length) {
+        int probeEnd = indexOf(line, 0, length, (byte) '|');
+        int matchEnd = indexOf(line, probeEnd + 1, length, (byte) '|');
+
+        if (probeEnd <= 0 || matchEnd <= probeEnd + 1) {
+            return;
+        }
+
+        int score = 0;
+        int digits = 0;
+
+        for (int i = matchEnd + 1; i < length && line[i] != '|' && line[i] > ' '; i++) {
+            if (line[i] < '0' || line[i] > '9') {
+                return;
+            }
+
+            score = score * 10 + line[i] - '0';
+            digits++;
+        }
+
+        if (digits == 0) {
+            return;
+        }
+
+        String match = new String(line, probeEnd + 1, matchEnd - probeEnd - 1, UTF8);
+
+        handler.handle(new SdbfMatch(getProbe(line, probeEnd), match, score, referenceSet));
+    }
+
+    private String getProbe(byte[] line, int length) {
+        boolean same = probe != null && probeBytes.length == length;
+
+        for (int i = 0; same && i < length; i++) {
+            same = probeBytes[i] == line[i];
+        }
+
+        if (!same) {
+            probeBytes = new byte[length];
+            System.arraycopy(line, 0, probeBytes, 0, length);
+            probe = new String(probeBytes, UTF8);
+        }
+
+        return probe;
+    }
+
+    private static int indexOf(byte[] line, int from, int length, byte b) {
+        for (int i = from; i < length; i++) {
+            if (line[i] == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
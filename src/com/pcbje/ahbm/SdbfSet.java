@@ -23,12 +23,22 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.openide.util.Exceptions;
 import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.TskCoreException;
 
@@ -38,44 +48,207 @@ import org.sleuthkit.datamodel.TskCoreException;
  */
 public class SdbfSet {
 
+    /**
+     * Follows an interactive search.
+     */
+    public interface SearchListener {
+
+        void searchStarted(int probes, int streamSets);
+
+        void probeHashed(Matchable probe);
+
+        void setCompared(File streamSet);
+
+        /**
+         * Runs the changes that the search makes to the probes, such as on the
+         * Swing thread when the probes are shown in the viewer. The changes
+         * must be run in the order they are given.
+         */
+        void update(Runnable changes);
+    }
+
     public static final String DEFAULT_OPEN_CASE_SET = "open_case.sdbf";
     public static final String DEFAULT_STREAM_SET = "streamset.txt";
-    private static CaseWrapper caseWrapper;
-    private static File openCaseSet;
-    private static BufferedWriter openCaseSdbfWriter;
-    private List<File> streamSets;
+    private static final Object caseSetLock = new Object();
+    private static SdbfSet caseSet;
+    private static AhbmJobSettings caseSetSettings;
+    private static boolean closeListenerAdded;
+    private CaseWrapper caseWrapper;
+    private File openCaseSet;
+    private BufferedWriter openCaseSdbfWriter;
+    private volatile List<File> streamSets;
     private Sdhash sdhash;
+    private final SdbfComparator comparator = new SdbfComparator();
+    private final AhbmJobSettings.Engine engine;
+    private final int parallelism;
+    private final MatchFilter filter;
+    private ExecutorService comparePool;
 
     private File openCaseSdbfCopy;
+    private File openCaseIndexSet;
+    private volatile OpenCaseIndex openCaseIndex;
+    private SdbfCache cache;
+    private int searches;
+    private boolean retired;
 
     public SdbfSet(AhbmJobSettings settings) {
-        caseWrapper = new CaseWrapper(AhbmIngestModule.getSettings());
+        caseWrapper = new CaseWrapper(settings);
         sdhash = new Sdhash(settings);
+        engine = settings != null ? settings.getEngine() : AhbmJobSettings.Engine.JAVA;
+        parallelism = settings != null ? settings.getCompareParallelism() : 1;
+        filter = MatchFilter.fromSettings(settings);
     }
 
-    public static void setCaseWrapper(CaseWrapper _caseWrapper) {
-        caseWrapper = _caseWrapper;
+    /**
+     * The set that the interactive searches share, so that the stream sets and
+     * the open case are loaded once per case rather than once per search. A
+     * new set is made when the settings change, such as when a new ingest job
+     * is started. The old set is retired rather than closed, since searches
+     * may still be running on it, and it closes when the last of them is done.
+     */
+    public static SdbfSet getCaseSet(AhbmJobSettings settings) {
+        synchronized (caseSetLock) {
+            if (caseSet != null && caseSetSettings != settings) {
+                closeCaseSet();
+            }
+
+            if (caseSet == null) {
+                caseSet = new SdbfSet(settings);
+                caseSetSettings = settings;
+
+                if (!closeListenerAdded) {
+                    closeListenerAdded = true;
+
+                    caseSet.caseWrapper.addCaseClosedListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            closeCaseSet();
+                        }
+                    });
+                }
+            }
+
+            return caseSet;
+        }
     }
 
-    public void addSdbfToOpenCase(String sdbf) throws IOException {
-        if (openCaseSet == null) {
-            openCaseSet = caseWrapper.getFileInModuleDir(DEFAULT_OPEN_CASE_SET);
-            openCaseSdbfWriter = new BufferedWriter(new FileWriter(openCaseSet, true));
+    /**
+     * Retires the shared set, such as when the case is closed.
+     */
+    static void closeCaseSet() {
+        synchronized (caseSetLock) {
+            if (caseSet != null) {
+                caseSet.retire();
+
+                caseSet = null;
+                caseSetSettings = null;
+            }
         }
+    }
 
-        openCaseSdbfWriter.write(sdbf);
+    public void setCaseWrapper(CaseWrapper caseWrapper) {
+        this.caseWrapper = caseWrapper;
     }
 
-    public void close() throws IOException {
+    /**
+     * @param cache stream matches of files with the same MD5 and size are
+     * reused. Matches with the open case are not cached, since the open case
+     * grows during the job.
+     */
+    public void setCache(SdbfCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Appends an SDBF to the open case set. Safe to call from several ingest
+     * threads, each SDBF is written as a whole.
+     */
+    public void addSdbfToOpenCase(String sdbf) throws IOException {
+        OpenCaseIndex index = openCaseIndex;
+        List<Sdbf> parsed = index != null ? Sdbf.parseAll(sdbf) : null;
+
+        synchronized (this) {
+            if (openCaseSet == null) {
+                openCaseSet = caseWrapper.getFileInModuleDir(DEFAULT_OPEN_CASE_SET);
+                openCaseSdbfWriter = new BufferedWriter(new FileWriter(openCaseSet, true));
+            }
+
+            openCaseSdbfWriter.write(sdbf);
+
+            if (index != null) {
+                index.addAll(parsed);
+            }
+        }
+    }
+
+    public synchronized void close() throws IOException {
         if (openCaseSdbfWriter != null) {
             openCaseSdbfWriter.close();
+            openCaseSdbfWriter = null;
             openCaseSet = null;
         }
 
         if (openCaseSdbfCopy != null) {
+            comparator.unload(openCaseSdbfCopy);
             openCaseSdbfCopy.delete();
             openCaseSdbfCopy = null;
         }
+
+        openCaseIndex = null;
+        streamSets = null;
+
+        if (comparePool != null) {
+            comparePool.shutdown();
+            comparePool = null;
+        }
+    }
+
+    /**
+     * Closes the set as soon as no search is running on it. A search that
+     * starts on a retired set loads what it needs again, and the set closes
+     * again when that search is done.
+     */
+    synchronized void retire() {
+        retired = true;
+
+        if (searches == 0) {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Counts the search in and loads the default stream sets if no stream
+     * sets were set or loaded, once for all the searches that start together.
+     */
+    private synchronized List<File> beginSearch() throws IOException {
+        searches++;
+
+        try {
+            if (streamSets == null) {
+                loadDefaultStreamSets(true);
+            }
+        } catch (IOException | RuntimeException ex) {
+            endSearch();
+            throw ex;
+        }
+
+        return streamSets;
+    }
+
+    private synchronized void endSearch() {
+        searches--;
+
+        if (retired && searches == 0) {
+            closeQuietly();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
     }
 
     public void setStreamSets(List<File> streamSets) {
@@ -87,29 +260,202 @@ public class SdbfSet {
     }
 
     public Collection<Matchable> streamMatch(Content content, String sdbf) throws IOException, TskCoreException {
-        File sdbfFile = writeStringToFile(sdbf);
+        Map<String, Matchable> input = new HashMap<>();
+        input.put(getProbeName(content), new Matchable(content.getName(), content));
 
-        String results;
+        String key = cache != null && !Sdbf.isBlockDigest(sdbf) ? SdbfCache.getKey(content) : null;
 
-        Matchable probe = new Matchable(content.getName(), content);
+        if (key == null) {
+            return streamMatch(input, sdbf);
+        }
 
-        Map<String, Matchable> input = new HashMap<>();
+        List<File> sets = streamSets;
+        List<File> fixedSets = new ArrayList<>(sets.size());
+        List<File> openCaseSets = new ArrayList<>(1);
 
-        if (content.getId() > 0) {
-            input.put(Long.toString(content.getId()), probe);
-        } else {
-            input.put(content.getName(), probe);
+        for (File streamSet : sets) {
+            if (streamSet.equals(openCaseIndexSet) || streamSet.equals(openCaseSdbfCopy)) {
+                openCaseSets.add(streamSet);
+            } else {
+                fixedSets.add(streamSet);
+            }
         }
 
-        for (File streamSet : streamSets) {
-            results = sdhash.compareSets(sdbfFile, streamSet);
+        List<SdbfMatch> results = cache.getMatches(key, getProbeName(content));
+
+        if (results == null) {
+            results = compareWithStreamSets(sdbf, fixedSets);
+            cache.putMatches(key, results);
+        }
 
-            Matchable.fromSdhashResults(input, results);
+        if (!openCaseSets.isEmpty()) {
+            results = new ArrayList<>(results);
+            results.addAll(compareWithStreamSets(sdbf, openCaseSets));
         }
 
+        Matchable.fromSdhashResults(input, results);
+
         return input.values();
     }
 
+    /**
+     * Matches several probes with one pass over each stream set.
+     *
+     * @param probes the probes keyed by the name used in their SDBF
+     * @param sdbfs the SDBFs of all the probes
+     */
+    public Collection<Matchable> streamMatch(Map<String, Matchable> probes, String sdbfs) throws IOException, TskCoreException {
+        Matchable.fromSdhashResults(probes, compareWithStreamSets(sdbfs, streamSets));
+
+        return probes.values();
+    }
+
+    /**
+     * @return the name that the SDBF of the content is generated with
+     */
+    public static String getProbeName(Content content) {
+        if (content.getId() > 0) {
+            return Long.toString(content.getId());
+        }
+
+        return content.getName();
+    }
+
+    /**
+     * Compares the probes with the given stream sets, one task per set when
+     * the compare parallelism is above 1. The matches are returned in the
+     * order of the stream sets regardless of which set finishes first.
+     */
+    private List<SdbfMatch> compareWithStreamSets(String sdbfs, List<File> sets) throws IOException {
+        final List<Sdbf> probes = engine == AhbmJobSettings.Engine.JAVA ? Sdbf.parseAll(sdbfs) : null;
+        final File probeFile = probes == null ? writeStringToFile(sdbfs) : null;
+
+        try {
+            List<SdbfMatch> results = new ArrayList<>();
+
+            if (parallelism <= 1 || sets.size() <= 1) {
+                for (File streamSet : sets) {
+                    compareWithStreamSet(probes, probeFile, streamSet, collect(results));
+                }
+
+                return results;
+            }
+
+            List<Future<List<SdbfMatch>>> tasks = new ArrayList<>(sets.size());
+
+            try {
+                for (File streamSet : sets) {
+                    tasks.add(getComparePool().submit(compareTask(probes, probeFile, streamSet)));
+                }
+
+                for (Future<List<SdbfMatch>> task : tasks) {
+                    results.addAll(getResult(task));
+                }
+            } finally {
+                cancelAll(tasks);
+            }
+
+            return results;
+        } finally {
+            if (probeFile != null) {
+                probeFile.delete();
+            }
+        }
+    }
+
+    private Callable<List<SdbfMatch>> compareTask(final List<Sdbf> probes, final File probeFile, final File streamSet) {
+        return new Callable<List<SdbfMatch>>() {
+            @Override
+            public List<SdbfMatch> call() throws Exception {
+                List<SdbfMatch> matches = new ArrayList<>();
+
+                compareWithStreamSet(probes, probeFile, streamSet, collect(matches));
+
+                return matches;
+            }
+        };
+    }
+
+    /**
+     * Stops the tasks that are still running, such as when one of them failed
+     * or the caller was interrupted. Finished tasks are not affected.
+     */
+    private static void cancelAll(Collection<? extends Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Compares the probes with one stream set through the MatchFilter. A copy
+     * of the open case set has the limits of the open case set.
+     */
+    private void compareWithStreamSet(final List<Sdbf> probes, final File probeFile, final File streamSet, SdbfMatch.Handler handler) throws IOException {
+        File limitedSet = streamSet.equals(openCaseSdbfCopy) ? new File(DEFAULT_OPEN_CASE_SET) : streamSet;
+
+        filter.filter(limitedSet, handler, new MatchFilter.Comparison() {
+            @Override
+            public void compare(SdbfMatch.Handler limited) throws IOException {
+                OpenCaseIndex index = openCaseIndex;
+
+                if (probes != null && index != null && streamSet.equals(openCaseIndexSet)) {
+                    comparator.compareSets(probes, index.snapshot(), streamSet, limited);
+                } else if (probes != null) {
+                    comparator.compareSets(probes, streamSet, limited);
+                } else {
+                    sdhash.compareSets(probeFile, streamSet, limited);
+                }
+            }
+        });
+    }
+
+    private static SdbfMatch.Handler collect(final List<SdbfMatch> matches) {
+        return new SdbfMatch.Handler() {
+            @Override
+            public void handle(SdbfMatch match) {
+                matches.add(match);
+            }
+        };
+    }
+
+    private static <T> T getResult(Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while comparing stream sets");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * The compare threads are interrupted when a task is cancelled, so that a
+     * cancelled search stops the comparisons it started.
+     */
+    private synchronized ExecutorService getComparePool() {
+        if (comparePool == null) {
+            comparePool = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ahbm-compare");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return comparePool;
+    }
+
     private File writeStringToFile(String sdbf) throws IOException {
         File file = File.createTempFile("stream", "probe");
 
@@ -133,7 +479,7 @@ public class SdbfSet {
             streamSetsFile.createNewFile();
         }
 
-        streamSets = new ArrayList<>();
+        List<File> loaded = new ArrayList<>();
 
         BufferedReader reader = new BufferedReader(new FileReader(streamSetsFile));
 
@@ -141,17 +487,37 @@ public class SdbfSet {
 
         while ((line = reader.readLine()) != null) {
             if (line.trim().length() > 0 && !line.startsWith("#") && !line.startsWith("//")) {
-                streamSets.add(new File(line));
+                loaded.add(new File(line));
             }
         }
 
-        openCaseSdbfCopy = createCopyOfOpenCaseSDBF();
+        reader.close();
+
+        if (againstExisting && engine == AhbmJobSettings.Engine.JAVA) {
+            openCaseIndexSet = caseWrapper.getFileInModuleDir(DEFAULT_OPEN_CASE_SET);
+            openCaseIndex = loadOpenCaseIndex(openCaseIndexSet);
+            loaded.add(openCaseIndexSet);
+        } else if (againstExisting) {
+            openCaseSdbfCopy = createCopyOfOpenCaseSDBF();
 
-        if (againstExisting && openCaseSdbfCopy != null) {
-            streamSets.add(openCaseSdbfCopy);
+            if (openCaseSdbfCopy != null) {
+                loaded.add(openCaseSdbfCopy);
+            }
         }
 
-        reader.close();
+        if (engine == AhbmJobSettings.Engine.JAVA) {
+            for (File streamSet : loaded) {
+                if (streamSet.exists() && !streamSet.equals(openCaseIndexSet)) {
+                    try {
+                        comparator.load(streamSet, getBinaryCopy(streamSet));
+                    } catch (IllegalArgumentException ex) {
+                        Exceptions.printStackTrace(ex);
+                    }
+                }
+            }
+        }
+
+        streamSets = loaded;
     }
 
     public List<File> getStreamSets() {
@@ -159,38 +525,159 @@ public class SdbfSet {
     }
 
     public void searchMatching(final Map<String, Matchable> probes) throws IOException, TskCoreException {
-        if (streamSets == null) {
-            loadDefaultStreamSets(true);
+        searchMatching(probes, null);
+    }
+
+    /**
+     * Hashes the probes and compares them with the stream sets, one task per
+     * set when the compare parallelism is above 1. The matches of each set are
+     * added to the probes as soon as the set is done, in the order the sets
+     * finish. The search stops with an InterruptedIOException when the thread
+     * is interrupted, which also cancels the compare tasks and any sdhash
+     * process they are waiting for. A set that is retired during the search is
+     * closed when the search is done.
+     *
+     * @param listener told about the progress of the search, may be null
+     */
+    public void searchMatching(Map<String, Matchable> probes, SearchListener listener) throws IOException, TskCoreException {
+        List<File> sets = beginSearch();
+
+        try {
+            searchMatching(probes, sets, listener);
+        } finally {
+            endSearch();
+        }
+    }
+
+    private void searchMatching(Map<String, Matchable> probes, List<File> sets, SearchListener listener) throws IOException, TskCoreException {
+        if (listener != null) {
+            listener.searchStarted(probes.size(), sets.size());
         }
 
-        StringBuilder signatures = new StringBuilder();
+        File probeFile = null;
 
-        for (Matchable probe : probes.values()) {
-            if (probe.getContent() != null) {
-                signatures.append(sdhash.generateSdbf(probe));
-                probe.setExpanded(true);
-                probe.setCompleted(false);
+        try {
+            StringBuilder signatures = new StringBuilder();
+
+            for (final Matchable probe : probes.values()) {
+                checkInterrupted();
+
+                if (probe.getContent() != null) {
+                    update(listener, new Runnable() {
+                        @Override
+                        public void run() {
+                            probe.setExpanded(true);
+                            probe.setCompleted(false);
+                        }
+                    });
+
+                    signatures.append(sdhash.generateSdbf(probe));
+                }
+
+                if (listener != null) {
+                    listener.probeHashed(probe);
+                }
             }
+
+            List<Sdbf> parsed = engine == AhbmJobSettings.Engine.JAVA ? Sdbf.parseAll(signatures.toString()) : null;
+            probeFile = parsed == null ? writeStringToFile(signatures.toString()) : null;
+
+            if (parallelism <= 1 || sets.size() <= 1) {
+                for (File streamSet : sets) {
+                    checkInterrupted();
+
+                    List<SdbfMatch> results = new ArrayList<>();
+
+                    compareWithStreamSet(parsed, probeFile, streamSet, collect(results));
+
+                    setCompared(probes, results, streamSet, listener);
+                }
+            } else {
+                searchInParallel(probes, parsed, probeFile, sets, listener);
+            }
+        } finally {
+            if (probeFile != null) {
+                probeFile.delete();
+            }
+
+            final Collection<Matchable> searched = probes.values();
+
+            update(listener, new Runnable() {
+                @Override
+                public void run() {
+                    for (Matchable probe : searched) {
+                        if (probe.getContent() != null) {
+                            probe.setCompleted(true);
+                        }
+                    }
+                }
+            });
         }
+    }
+
+    private void searchInParallel(Map<String, Matchable> probes, List<Sdbf> parsed, File probeFile, List<File> sets, SearchListener listener) throws IOException, TskCoreException {
+        CompletionService<List<SdbfMatch>> completed = new ExecutorCompletionService<>(getComparePool());
+        Map<Future<List<SdbfMatch>>, File> tasks = new HashMap<>();
+
+        try {
+            for (File streamSet : sets) {
+                tasks.put(completed.submit(compareTask(parsed, probeFile, streamSet)), streamSet);
+            }
 
-        final File probeFile = writeStringToFile(signatures.toString());
+            for (int i = 0; i < sets.size(); i++) {
+                Future<List<SdbfMatch>> task;
 
-        final StringBuilder results = new StringBuilder();
+                try {
+                    task = completed.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Search cancelled");
+                }
 
-        for (File streamSet : streamSets) {
-            results.append(sdhash.compareSets(probeFile, streamSet));
+                setCompared(probes, getResult(task), tasks.get(task), listener);
+            }
+        } finally {
+            cancelAll(tasks.keySet());
+        }
+    }
+
+    /**
+     * Looks up the matched contents on the calling thread and has the listener
+     * add the matches to the probes.
+     */
+    private static void setCompared(Map<String, Matchable> probes, List<SdbfMatch> results, final File streamSet, final SearchListener listener) throws TskCoreException {
+        if (listener == null) {
+            Matchable.fromSdhashResults(probes, results);
+
+            return;
         }
 
-        Matchable.fromSdhashResults(probes, results.toString());
+        final Map<Matchable, List<Matchable>> matches = Matchable.getMatches(probes, results);
 
-        for (Matchable probe : probes.values()) {
-            if (probe.getContent() != null) {
-                probe.setCompleted(true);
+        listener.update(new Runnable() {
+            @Override
+            public void run() {
+                Matchable.addMatches(matches);
+                listener.setCompared(streamSet);
             }
+        });
+    }
+
+    private static void update(SearchListener listener, Runnable changes) {
+        if (listener != null) {
+            listener.update(changes);
+        } else {
+            changes.run();
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Search cancelled");
         }
     }
 
-    public void setOpenCaseSet(File openCaseSet) {
+    public synchronized void setOpenCaseSet(File openCaseSet) {
         this.openCaseSet = openCaseSet;
     }
 
@@ -201,6 +688,68 @@ public class SdbfSet {
         writer.write(sourceFile.getAbsolutePath());
         writer.write("\n");
         writer.close();
+
+        getBinaryCopy(sourceFile);
+    }
+
+    /**
+     * Writes the memory mappable copy of a stream set (see SdbfBinary) unless
+     * an up to date copy exists.
+     *
+     * @return the binary copy, or null if it could not be written
+     */
+    File getBinaryCopy(File streamSet) {
+        String name = String.format("%s-%08x%s", streamSet.getName(), streamSet.getAbsolutePath().hashCode(), SdbfBinary.EXTENSION);
+        File binary = caseWrapper.getFileInModuleDir("binary" + File.separator + name);
+
+        if (!SdbfBinary.isUpToDate(binary, streamSet)) {
+            try {
+                SdbfBinary.write(streamSet, binary);
+            } catch (IOException | IllegalArgumentException ex) {
+                Exceptions.printStackTrace(ex);
+
+                return null;
+            }
+        }
+
+        return binary;
+    }
+
+    /**
+     * Reads the digests that earlier jobs added to the open case. Lines that
+     * are not valid SDBFs are skipped.
+     */
+    private static OpenCaseIndex loadOpenCaseIndex(File openCase) throws IOException {
+        OpenCaseIndex index = new OpenCaseIndex();
+
+        if (!openCase.exists()) {
+            return index;
+        }
+
+        BufferedReader reader = new BufferedReader(new FileReader(openCase));
+        int invalid = 0;
+
+        try {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() > 0) {
+                    try {
+                        index.add(Sdbf.parse(line));
+                    } catch (IllegalArgumentException ex) {
+                        invalid++;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (invalid > 0) {
+            Exceptions.printStackTrace(new IOException(String.format("Skipped %d invalid SDBFs in %s", invalid, openCase.getAbsolutePath())));
+        }
+
+        return index;
     }
 
     private File createCopyOfOpenCaseSDBF() throws IOException {
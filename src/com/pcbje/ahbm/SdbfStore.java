@@ -0,0 +1,348 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.openide.util.Exceptions;
+
+/**
+ * The SDBFs generated for the files of a case, indexed by object ID and, for
+ * files that have an MD5, by cache key (see SdbfCache). The file in the
+ * module directory starts with a header that names the settings the SDBFs
+ * were generated with, followed by the records:
+ *
+ * <pre>
+ * header:     "AHBMSTOR" version:int generator:UTF
+ * object ID:  8 bytes
+ * length:     4 bytes
+ * key length: 2 bytes, 0 for files without a cache key
+ * SDBF:       length bytes of UTF-8, empty for files too small to hash
+ * key:        key length bytes of UTF-8
+ * </pre>
+ *
+ * Only the record headers and keys are read when the store is opened, in one
+ * sequential pass, so looking up a digest is one positioned read. A record
+ * that was cut short by a crash is truncated away, and a store written with
+ * other settings (see getGenerator) is emptied. Stores are shared by
+ * everything that hashes files of the same case, both ingest jobs and
+ * expansions in the viewer, and are closed with the case.
+ *
+ * @author pcbje
+ */
+public class SdbfStore {
+
+    public static final String DEFAULT_STORE_FILE = "sdbf_store.bin";
+    private static final byte[] MAGIC = "AHBMSTOR".getBytes(Charset.forName("US-ASCII"));
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 14;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Map<File, SdbfStore> stores = new HashMap<>();
+    private static boolean closeListenerAdded;
+    private final Map<Long, Long> offsets = new ConcurrentHashMap<>();
+    private final Map<String, Long> keys = new ConcurrentHashMap<>();
+    private final File file;
+    private final String generator;
+    private final FileChannel channel;
+
+    SdbfStore(File file, String generator) throws IOException {
+        this.file = file;
+        this.generator = generator;
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+
+        long position = readFileHeader();
+
+        if (position < 0) {
+            channel.truncate(0);
+            position = writeFileHeader();
+        }
+
+        long size = channel.size();
+        DataInputStream records = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+
+        try {
+            skipFully(records, position);
+
+            while (position + HEADER_SIZE <= size) {
+                long objId = records.readLong();
+                int length = records.readInt();
+                int keyLength = records.readUnsignedShort();
+                long end = position + HEADER_SIZE + length + keyLength;
+
+                if (length < 0 || end > size) {
+                    break;
+                }
+
+                skipFully(records, length);
+
+                byte[] key = new byte[keyLength];
+                records.readFully(key);
+
+                offsets.put(objId, position);
+
+                if (keyLength > 0) {
+                    keys.put(new String(key, UTF8), position);
+                }
+
+                position = end;
+            }
+        } finally {
+            records.close();
+        }
+
+        if (position < size) {
+            channel.truncate(position);
+        }
+    }
+
+    /**
+     * @return the position of the first record, or -1 if the file is empty,
+     * not a store of this version, or written with other settings
+     */
+    private long readFileHeader() throws IOException {
+        if (channel.size() == 0) {
+            return -1;
+        }
+
+        DataInputStream header = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            header.readFully(magic);
+
+            if (!Arrays.equals(MAGIC, magic) || header.readInt() != VERSION || !generator.equals(header.readUTF())) {
+                return -1;
+            }
+
+            return MAGIC.length + 4 + 2 + generator.getBytes(UTF8).length;
+        } catch (EOFException | UTFDataFormatException ex) {
+            return -1;
+        } finally {
+            header.close();
+        }
+    }
+
+    private long writeFileHeader() throws IOException {
+        DataOutputStream header = new DataOutputStream(Channels.newOutputStream(channel.position(0)));
+        header.write(MAGIC);
+        header.writeInt(VERSION);
+        header.writeUTF(generator);
+        header.flush();
+
+        return channel.size();
+    }
+
+    private static void skipFully(DataInputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            int skipped = in.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+
+            bytes -= skipped;
+        }
+    }
+
+    /**
+     * @return the settings that decide what SDBF a file gets: the engine, and
+     * in block mode which files are split and into what segments
+     */
+    public static String getGenerator(AhbmJobSettings settings) {
+        if (!settings.isBlockMode()) {
+            return String.format("engine=%s", settings.getEngine());
+        }
+
+        return String.format("engine=%s blockMode=true maxFileSize=%d blockSegmentSize=%d",
+                settings.getEngine(), settings.getMaxFileSizeInBytes(), settings.getBlockSegmentSizeInBytes());
+    }
+
+    /**
+     * @return the store of the current case for SDBFs generated with the
+     * given settings. All stores are closed when the case is closed.
+     */
+    public static SdbfStore open(CaseWrapper caseWrapper, AhbmJobSettings settings) throws IOException {
+        synchronized (stores) {
+            if (!closeListenerAdded) {
+                closeListenerAdded = true;
+
+                caseWrapper.addCaseClosedListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        closeAll();
+                    }
+                });
+            }
+        }
+
+        return open(caseWrapper.getFileInModuleDir(DEFAULT_STORE_FILE), getGenerator(settings));
+    }
+
+    /**
+     * @return the store kept in the given file, opened by the first caller
+     * @throws IOException if the store is already open with other settings
+     */
+    public static SdbfStore open(File file, String generator) throws IOException {
+        synchronized (stores) {
+            File key = file.getAbsoluteFile();
+            SdbfStore store = stores.get(key);
+
+            if (store == null) {
+                store = new SdbfStore(key, generator);
+                stores.put(key, store);
+            } else if (!store.generator.equals(generator)) {
+                throw new IOException(String.format("%s is in use with other settings: %s", key.getAbsolutePath(), store.generator));
+            }
+
+            return store;
+        }
+    }
+
+    /**
+     * Closes every open store.
+     */
+    static void closeAll() {
+        List<SdbfStore> open;
+
+        synchronized (stores) {
+            open = new ArrayList<>(stores.values());
+        }
+
+        for (SdbfStore store : open) {
+            try {
+                store.close();
+            } catch (IOException ex) {
+                Exceptions.printStackTrace(ex);
+            }
+        }
+    }
+
+    /**
+     * @return the stored SDBF of the object including the trailing line
+     * separator, an empty string if the file was too small to hash, or null
+     * if the object has not been hashed
+     */
+    public String get(long objId) throws IOException {
+        Long position = offsets.get(objId);
+
+        return position != null ? read(position) : null;
+    }
+
+    /**
+     * @return the SDBF that was stored with the cache key, named after the
+     * object it was generated for, or null if there is none
+     */
+    public String get(String key) throws IOException {
+        Long position = keys.get(key);
+
+        return position != null ? read(position) : null;
+    }
+
+    private String read(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, position);
+        header.flip();
+        header.getLong();
+
+        ByteBuffer sdbf = ByteBuffer.allocate(header.getInt());
+        readFully(sdbf, position + HEADER_SIZE);
+
+        return new String(sdbf.array(), UTF8);
+    }
+
+    /**
+     * Appends the SDBF of an object. A later record for the same object
+     * replaces the earlier one.
+     */
+    public void put(long objId, String sdbf) throws IOException {
+        put(objId, null, sdbf);
+    }
+
+    /**
+     * Appends the SDBF of an object that can also be found by its cache key,
+     * or by object ID only if the key is null.
+     */
+    public synchronized void put(long objId, String key, String sdbf) throws IOException {
+        byte[] bytes = sdbf.getBytes(UTF8);
+        byte[] keyBytes = key != null ? key.getBytes(UTF8) : new byte[0];
+        long position = channel.size();
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bytes.length + keyBytes.length);
+        record.putLong(objId);
+        record.putInt(bytes.length);
+        record.putShort((short) keyBytes.length);
+        record.put(bytes);
+        record.put(keyBytes);
+        record.flip();
+
+        while (record.hasRemaining()) {
+            channel.write(record, position + record.position());
+        }
+
+        offsets.put(objId, position);
+
+        if (key != null) {
+            keys.put(key, position);
+        }
+    }
+
+    public boolean contains(long objId) {
+        return offsets.containsKey(objId);
+    }
+
+    public boolean contains(String key) {
+        return keys.containsKey(key);
+    }
+
+    public int size() {
+        return offsets.size();
+    }
+
+    /**
+     * Closes the file and forgets the store, the next call to open reads it
+     * again.
+     */
+    public void close() throws IOException {
+        synchronized (stores) {
+            stores.remove(file);
+        }
+
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(String.format("Unexpected end of %s", file.getAbsolutePath()));
+            }
+        }
+    }
+}
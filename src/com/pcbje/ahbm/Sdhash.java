@@ -17,12 +17,12 @@ import com.pcbje.ahbm.matchable.Matchable;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.Properties;
+import java.io.OutputStream;
+import java.util.List;
 import org.openide.util.Exceptions;
+import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.TskCoreException;
 
 /**
@@ -31,9 +31,35 @@ import org.sleuthkit.datamodel.TskCoreException;
  */
 public class Sdhash {
 
+    /**
+     * Receives the segments of content that is digested in block mode.
+     */
+    public interface SegmentHandler {
+
+        void handle(String sdbf) throws IOException, TskCoreException;
+    }
+
+    private static final long MAX_CONTENT_SIZE = Integer.MAX_VALUE - 8;
     private CaseWrapper caseWrapper;
     private AhbmJobSettings props;
     private int bufferSize;
+    private final ThreadLocal<SdbfGenerator> generators = new ThreadLocal<SdbfGenerator>() {
+        @Override
+        protected SdbfGenerator initialValue() {
+            return new SdbfGenerator();
+        }
+    };
+    private final ThreadLocal<byte[]> segments = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[0];
+        }
+    };
+    private static SdhashWorkerPool workerPool;
+    private static boolean poolListenerAdded;
+    private SdbfCache cache;
+    private SdbfStore store;
+    private boolean storeOpened;
 
     public Sdhash(AhbmJobSettings settings) {
         caseWrapper = new CaseWrapper(settings);
@@ -43,99 +69,376 @@ public class Sdhash {
         this.caseWrapper = caseWrapper;
     }
 
-    public String generateSdbf(Matchable probe) throws IOException, TskCoreException {
+    /**
+     * @param contentReader counts the content that is read for the SDBFs,
+     * such as the reader of the ingest job
+     */
+    public void setContentReader(ContentReader contentReader) {
+        caseWrapper.setContentReader(contentReader);
+    }
+
+    /**
+     * @param cache SDBFs of files with the same MD5 and size are taken from
+     * the cache instead of being generated. Generated SDBFs are stored through
+     * the cache, once, so that they can be found both ways.
+     */
+    public void setCache(SdbfCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param store SDBFs are looked up by object ID before they are generated,
+     * and stored after. Replaces the store of the case.
+     */
+    public synchronized void setStore(SdbfStore store) {
+        this.store = store;
+        this.storeOpened = true;
+    }
+
+    /**
+     * @return the SDBF store of the current case, or null if storing is
+     * disabled or the store could not be opened
+     */
+    private synchronized SdbfStore getStore() {
+        if (!storeOpened) {
+            storeOpened = true;
+
+            if (getSettings().isStoreSdbfs()) {
+                try {
+                    store = SdbfStore.open(caseWrapper, getSettings());
+                } catch (IOException | RuntimeException ex) {
+                    Exceptions.printStackTrace(ex);
+                }
+            }
+        }
+
+        return store;
+    }
+
+    private synchronized AhbmJobSettings getSettings() {
         if (props == null) {
-            props = caseWrapper.getSettings();
+            props = caseWrapper.getSettings() != null ? caseWrapper.getSettings() : new AhbmJobSettings();
             bufferSize = props.getReadBufferSize();
         }
 
-        File tmp = File.createTempFile("ahbm", "probe");
+        return props;
+    }
 
-        FileOutputStream out = new FileOutputStream(tmp);
+    /**
+     * @return the pool shared by all Sdhash instances, sized to the number of
+     * file ingest threads. The pool is closed when the case is closed.
+     */
+    private SdhashWorkerPool getWorkerPool() {
+        synchronized (Sdhash.class) {
+            long timeout = getSettings().getSdhashTimeout() * 1000L;
 
-        try {
-            caseWrapper.readFile(out, bufferSize, probe.getContent());
+            if (workerPool == null) {
+                int size;
+
+                try {
+                    size = caseWrapper.getNumberOfIngestThreads();
+                } catch (RuntimeException ex) {
+                    size = Runtime.getRuntime().availableProcessors();
+                }
+
+                workerPool = new SdhashWorkerPool(size, timeout);
+
+                if (!poolListenerAdded) {
+                    poolListenerAdded = true;
+
+                    caseWrapper.addCaseClosedListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            closeWorkerPool();
+                        }
+                    });
+                }
+            } else {
+                workerPool.setTimeoutMillis(timeout);
+            }
+
+            return workerPool;
+        }
+    }
+
+    /**
+     * Stops the sdhash workers of the shared pool. The next call that needs
+     * sdhash starts a new pool.
+     */
+    static void closeWorkerPool() {
+        synchronized (Sdhash.class) {
+            if (workerPool != null) {
+                workerPool.close();
+                workerPool = null;
+            }
+        }
+    }
+
+    public String generateSdbf(Matchable probe) throws IOException, TskCoreException {
+        return generateSdbf(probe, null, 0);
+    }
+
+    /**
+     * @param data the first length bytes are the content, already read by a
+     * prefetcher, or null to read the content when it has to be hashed
+     */
+    public String generateSdbf(Matchable probe, byte[] data, int length) throws IOException, TskCoreException {
+        Content content = probe.getContent();
+        SdbfStore sdbfStore = content.getId() > 0 ? getStore() : null;
+
+        if (sdbfStore != null) {
+            String sdbf = sdbfStore.get(content.getId());
 
-            out.close();
-        } catch (Exception e) {
-            Exceptions.printStackTrace(e);
+            if (sdbf != null) {
+                return sdbf;
+            }
         }
 
-        String[] cmd = new String[]{
-            "sdhash",
-            tmp.getAbsolutePath()
-        };
+        String key = cache != null && !isBlockContent(content) ? SdbfCache.getKey(content) : null;
+        String sdbf = key != null ? cache.getSdbf(key, Long.toString(content.getId())) : null;
 
-        ProcessBuilder processBuilder = new ProcessBuilder(cmd);
-        processBuilder.redirectErrorStream(true);
+        if (sdbf == null && isBlockContent(content)) {
+            sdbf = generateBlockSdbf(content);
+        } else if (sdbf == null) {
+            if (getSettings().getEngine() == AhbmJobSettings.Engine.JAVA && data != null) {
+                sdbf = generators.get().generate(Long.toString(content.getId()), data, length);
+            } else if (getSettings().getEngine() == AhbmJobSettings.Engine.JAVA) {
+                sdbf = generateSdbfInProcess(content);
+            } else {
+                sdbf = generateSdbfWithSdhash(content);
+            }
 
-        Process process = processBuilder.start();
-        InputStream in = process.getInputStream();
+            if (key != null) {
+                cache.putSdbf(content.getId(), key, sdbf);
 
-        int read;
-        byte[] buffer = new byte[1000];
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                return sdbf;
+            }
+        }
 
-        while ((read = in.read(buffer)) > 0) {
-            baos.write(buffer, 0, read);
+        if (sdbfStore != null) {
+            sdbfStore.put(content.getId(), sdbf);
         }
 
-        in.close();
+        return sdbf;
+    }
 
-        tmp.delete();
+    /**
+     * @return true if generateSdbf would read the whole content into memory
+     * for the in-process generator, i.e. it is worth reading ahead
+     */
+    public boolean isPrefetchable(Content content) throws IOException {
+        if (getSettings().getEngine() != AhbmJobSettings.Engine.JAVA || isBlockContent(content)) {
+            return false;
+        }
 
-        String sdbf = new String(baos.toByteArray());
+        SdbfStore sdbfStore = content.getId() > 0 ? getStore() : null;
 
-        String replace = new StringBuilder().append(":").append(tmp.getAbsolutePath().length()).append(":").append(tmp.getAbsolutePath()).append(":").toString();
-        String with = new StringBuilder().append(":").append(Long.toString(probe.getContent().getId()).length()).append(":").append(Long.toString(probe.getContent().getId())).append(":").toString();
+        if (sdbfStore != null && sdbfStore.contains(content.getId())) {
+            return false;
+        }
 
-        return sdbf.replace(replace, with);
+        String key = cache != null ? SdbfCache.getKey(content) : null;
+
+        return key == null || !cache.contains(key);
     }
 
-    String compareSets(File probe, File reference) throws IOException {
-        String[] cmd = new String[]{
-            "sdhash",
-            "-c",
-            probe.getAbsolutePath(),
-            reference.getAbsolutePath()
-        };
-
-        ProcessBuilder processBuilder = new ProcessBuilder(cmd);
-        processBuilder.redirectErrorStream(true);
-        Process process = processBuilder.start();
-        BufferedReader result = new BufferedReader(new InputStreamReader(process.getInputStream()));
-        StringBuilder scores = new StringBuilder();
-        String line;
-        while ((line = result.readLine()) != null) {
-            scores.append(line);
-            scores.append("|").append(reference.getAbsolutePath());
-            scores.append("\n");
+    /**
+     * Reads the whole content with the same reads as generateSdbf, into a
+     * buffer of exactly its size.
+     *
+     * @throws IOException if the content is too large for a single array,
+     * such content can only be digested in block mode
+     */
+    ContentBuffer readContent(Content content) throws IOException, TskCoreException {
+        if (content.getSize() > MAX_CONTENT_SIZE) {
+            throw new IOException(String.format("%s is too large to hash in memory, enable block mode for files of this size", content.getName()));
         }
+
+        ContentBuffer out = new ContentBuffer((int) Math.max(32, content.getSize()));
+
+        caseWrapper.readFile(out, getBufferSize(), content);
+
+        return out;
+    }
+
+    private synchronized int getBufferSize() {
+        getSettings();
+
+        return bufferSize;
+    }
+
+    /**
+     * @return true if the content is above the maximum file size and block
+     * mode is enabled
+     */
+    public boolean isBlockContent(Content content) {
+        AhbmJobSettings settings = getSettings();
+
+        return settings.isBlockMode() && settings.getMaxFileSizeInBytes() > 0 && content.getSize() > settings.getMaxFileSizeInBytes();
+    }
+
+    /**
+     * Reads the content one segment at a time and passes the block mode SDBF
+     * of each segment to the handler before reading the next, so memory use
+     * does not depend on the size of the content. Segments are named after
+     * their offset in the content (see Sdbf.getSegmentName). Block mode
+     * always uses SdbfGenerator, regardless of the engine. Each thread reuses
+     * one segment buffer for all the files it digests.
+     *
+     * @throws IOException if a segment could not be read in full, so that a
+     * truncated segment is never digested
+     */
+    public void generateBlockSdbfs(Content content, SegmentHandler handler) throws IOException, TskCoreException {
+        int segmentSize = getSettings().getBlockSegmentSizeInBytes();
+        byte[] buffer = getSegmentBuffer(segmentSize);
+        String id = Long.toString(content.getId());
+
+        for (long pos = 0; pos < content.getSize(); pos += segmentSize) {
+            int read = caseWrapper.readFile(buffer, segmentSize, content, pos);
+
+            if (read <= 0) {
+                break;
+            }
+
+            String sdbf = generators.get().generateBlocks(Sdbf.getSegmentName(id, pos), buffer, read, SdbfGenerator.DD_BLOCK_SIZE);
+
+            if (!sdbf.isEmpty()) {
+                handler.handle(sdbf);
+            }
+        }
+    }
+
+    private byte[] getSegmentBuffer(int segmentSize) {
+        byte[] buffer = segments.get();
+
+        if (buffer.length != segmentSize) {
+            buffer = new byte[segmentSize];
+            segments.set(buffer);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * @return the SDBFs of all segments of the content, one per line
+     */
+    private String generateBlockSdbf(Content content) throws IOException, TskCoreException {
+        final StringBuilder sdbfs = new StringBuilder();
+
+        generateBlockSdbfs(content, new SegmentHandler() {
+            @Override
+            public void handle(String sdbf) {
+                sdbfs.append(sdbf);
+            }
+        });
+
+        return sdbfs.toString();
+    }
+
+    private String generateSdbfInProcess(Content content) throws IOException, TskCoreException {
+        ContentBuffer out = readContent(content);
+
+        return generators.get().generate(Long.toString(content.getId()), out.getBuffer(), out.size());
+    }
+
+    /**
+     * Streams the content to "sdhash -" and writes the content ID into the
+     * header of the resulting SDBF.
+     *
+     * @throws IOException if the content could not be read or sdhash failed,
+     * so that a partial digest is never stored
+     */
+    private String generateSdbfWithSdhash(final Content content) throws IOException {
+        final int readSize = getBufferSize();
+
+        List<String> lines = getWorkerPool().executePiped(new SdhashWorkerPool.Input() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                try {
+                    caseWrapper.readFile(out, readSize, content);
+                } catch (TskCoreException ex) {
+                    throw new IOException(ex);
+                }
+            }
+        }, "-");
+
+        String id = Long.toString(content.getId());
+
+        StringBuilder sdbf = new StringBuilder();
+
+        for (String line : lines) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            if (!line.startsWith("sdbf")) {
+                throw new IOException(String.format("Unexpected sdhash output for %s: %s", content.getName(), line));
+            }
+
+            sdbf.append(Sdbf.rename(line, id)).append("\n");
+        }
+
+        return sdbf.toString();
+    }
+
+    String compareSets(File probe, File reference) throws IOException {
+        final StringBuilder scores = new StringBuilder();
+
+        compareSets(probe, reference, new SdbfMatch.Handler() {
+            @Override
+            public void handle(SdbfMatch match) {
+                scores.append(match).append("\n");
+            }
+        });
+
         return scores.toString();
     }
 
+    /**
+     * Runs "sdhash -c" and parses the matches while its output is read.
+     */
+    void compareSets(File probe, File reference, SdbfMatch.Handler handler) throws IOException {
+        getWorkerPool().execute(false, new SdbfMatchParser(reference, handler), "-c", probe.getAbsolutePath(), reference.getAbsolutePath());
+    }
+
+    /**
+     * A stream sized to the content whose array is handed to the generator
+     * without the copy of toByteArray.
+     */
+    static class ContentBuffer extends ByteArrayOutputStream {
+
+        ContentBuffer(int size) {
+            super(size);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
     public void setBufferSize(int bufferSize) {
         this.bufferSize = bufferSize;
     }
 
+    /**
+     * Checks that the file is a valid SDBF set before it is imported. With
+     * the JAVA engine, the SDBFs are parsed the way SdbfBinary and the
+     * comparator read them, so sdhash does not have to be installed.
+     */
     public void validateSdbf(File sourceFile) throws IOException {
         if (!sourceFile.exists()) {
             throw new RuntimeException(String.format("Could not find file: %s", sourceFile.getAbsolutePath()));
         }
 
-        String[] cmd = new String[]{
-            "sdhash",
-            "--validate",
-            sourceFile.getAbsolutePath()
-        };
+        if (getSettings().getEngine() == AhbmJobSettings.Engine.JAVA) {
+            validateSdbfInProcess(sourceFile);
 
-        ProcessBuilder processBuilder = new ProcessBuilder(cmd);
+            return;
+        }
 
-        Process process = processBuilder.start();
-        BufferedReader result = new BufferedReader(new InputStreamReader(process.getErrorStream()));
         StringBuilder error = new StringBuilder();
-        String line;
-        while ((line = result.readLine()) != null) {
+
+        for (String line : getWorkerPool().execute(true, "--validate", sourceFile.getAbsolutePath())) {
             error.append(line);
         }
 
@@ -144,6 +447,31 @@ public class Sdhash {
         }
     }
 
+    private static void validateSdbfInProcess(File sourceFile) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(sourceFile));
+        int lineNumber = 0;
+
+        try {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+
+                try {
+                    Sdbf.parse(line);
+                } catch (IllegalArgumentException ex) {
+                    throw new RuntimeException(String.format("%s: line %d: %s", sourceFile.getAbsolutePath(), lineNumber, ex.getMessage()), ex);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
     public void validateSdbfs(String[] paths) throws IOException {
         for (String path : paths) {
             if (path.trim().length() > 0 && !path.startsWith("#")) {
@@ -0,0 +1,502 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A long-lived shell that runs sdhash jobs written to its stdin. The shell is
+ * the loop driver: each job is one sdhash command line followed by an echo of
+ * a sentinel and the exit status, which marks the end of the job's output.
+ * This way the Autopsy JVM forks once per worker instead of once per sdhash
+ * call. Output is read as bytes and handed out one line at a time in a buffer
+ * that is reused. Content that sdhash hashes from stdin is written to a named
+ * pipe of the worker, so piped jobs do not fork either.
+ *
+ * sdhash runs as a child of the shell, so destroying the shell alone would
+ * leave sdhash running and holding the output pipe. The worker therefore
+ * kills the children of the shell first. Windows has no fork, so there the
+ * worker starts sdhash directly for every job and no shell is involved.
+ *
+ * @author pcbje
+ */
+class SdhashWorker {
+
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase().startsWith("windows");
+    private static final int MAX_ERROR_LENGTH = 1024;
+    private final String id = UUID.randomUUID().toString().replace("-", "");
+    private final String sentinel = "__AHBM_" + id + "__";
+    private final byte[] sentinelBytes = sentinel.getBytes(Charset.forName("US-ASCII"));
+    private final File fifo = new File(System.getProperty("java.io.tmpdir"), "ahbm-" + id + ".fifo");
+    private final File errors = new File(System.getProperty("java.io.tmpdir"), "ahbm-" + id + ".err");
+    private final String executable;
+    private final Process process;
+    private final BufferedWriter stdin;
+    private final InputStream stdout;
+    private final String shellPid;
+    private volatile Process job;
+    private volatile boolean destroyed;
+    private volatile boolean fifoCreated;
+    private byte[] line = new byte[256];
+    private int status;
+
+    /**
+     * @param executable the sdhash command, looked up on the PATH unless it
+     * is a path
+     */
+    SdhashWorker(String executable) throws IOException {
+        this.executable = executable;
+
+        if (WINDOWS) {
+            process = null;
+            stdin = null;
+            stdout = null;
+            shellPid = null;
+            return;
+        }
+
+        ProcessBuilder processBuilder = new ProcessBuilder("/bin/sh");
+        processBuilder.redirectErrorStream(true);
+
+        process = processBuilder.start();
+        stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+        stdout = new BufferedInputStream(process.getInputStream());
+
+        write("echo $$");
+
+        int length = readLine(stdout);
+
+        if (length < 0) {
+            throw new EOFException("sdhash worker exited");
+        }
+
+        shellPid = new String(line, 0, length).trim();
+
+        ping();
+    }
+
+    /**
+     * Runs sdhash with the given arguments and nothing on its stdin, so that
+     * it can not read the jobs that follow from the stdin of the shell. What
+     * sdhash writes to stderr is kept apart from the output and only used to
+     * report a failure.
+     *
+     * @param errorsOnly hand out what sdhash writes to stderr instead of
+     * stdout. The errors are then the result, and the exit status is left to
+     * the caller.
+     * @param output receives the output lines of the command
+     * @throws IOException if sdhash exits with an error
+     */
+    void run(List<String> args, boolean errorsOnly, SdhashWorkerPool.Output output) throws IOException {
+        if (WINDOWS) {
+            int exitValue = runProcess(args, errorsOnly, null, output);
+
+            if (!errorsOnly) {
+                checkStatus(exitValue);
+            }
+
+            return;
+        }
+
+        StringBuilder command = getCommand(args);
+
+        command.append(" </dev/null");
+
+        if (errorsOnly) {
+            command.append(" 2>&1 1>/dev/null");
+        } else {
+            command.append(" 2>").append(quote(errors.getAbsolutePath()));
+        }
+
+        write(command.toString());
+        writeSentinel();
+
+        int exitValue = readUntilSentinel(output);
+
+        if (!errorsOnly) {
+            checkStatus(exitValue);
+        }
+    }
+
+    /**
+     * Runs sdhash with the input on its stdin. What sdhash writes to stderr
+     * is kept apart from the output and only used to report a failure.
+     *
+     * @param output receives the stdout lines of the command
+     * @throws IOException if the input could not be written or sdhash exits
+     * with an error
+     */
+    void runPiped(List<String> args, SdhashWorkerPool.Input input, SdhashWorkerPool.Output output) throws IOException {
+        if (WINDOWS) {
+            checkStatus(runProcess(args, false, input, output));
+            return;
+        }
+
+        if (!fifoCreated) {
+            write("mkfifo " + quote(fifo.getAbsolutePath()));
+            writeSentinel();
+
+            if (readUntilSentinel(null) != 0) {
+                throw new IOException(String.format("Could not create %s", fifo.getAbsolutePath()));
+            }
+
+            fifoCreated = true;
+        }
+
+        StringBuilder command = getCommand(args);
+
+        command.append(" <").append(quote(fifo.getAbsolutePath()));
+        command.append(" 2>").append(quote(errors.getAbsolutePath()));
+
+        write(command.toString());
+        writeSentinel();
+
+        IOException failed = null;
+
+        try {
+            feed(input);
+        } catch (IOException ex) {
+            failed = ex;
+        }
+
+        checkStatus(readUntilSentinel(output));
+
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    /**
+     * Writes the input to the named pipe that sdhash reads from. Opening the
+     * pipe waits until sdhash has opened the other end.
+     */
+    private void feed(SdhashWorkerPool.Input input) throws IOException {
+        if (destroyed) {
+            throw new InterruptedIOException("sdhash worker destroyed");
+        }
+
+        OutputStream out = new FileOutputStream(fifo);
+
+        try {
+            if (destroyed) {
+                // The pipe was removed by destroy, this may be a plain file
+                fifo.delete();
+                throw new InterruptedIOException("sdhash worker destroyed");
+            }
+
+            input.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Runs sdhash as a direct child process, which destroy can kill.
+     *
+     * @param input written to stdin, or null to close stdin right away
+     * @return the exit status of sdhash
+     */
+    private int runProcess(List<String> args, boolean errorsOnly, SdhashWorkerPool.Input input, SdhashWorkerPool.Output output) throws IOException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(executable);
+        cmd.addAll(args);
+
+        ProcessBuilder processBuilder = new ProcessBuilder(cmd);
+
+        if (errorsOnly) {
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.to(new File("NUL")));
+        } else {
+            processBuilder.redirectError(ProcessBuilder.Redirect.to(errors));
+        }
+
+        Process sdhash = processBuilder.start();
+        job = sdhash;
+
+        try {
+            IOException failed = null;
+
+            try (OutputStream out = sdhash.getOutputStream()) {
+                if (input != null) {
+                    input.writeTo(out);
+                }
+            } catch (IOException ex) {
+                failed = ex;
+            }
+
+            InputStream in = new BufferedInputStream(errorsOnly ? sdhash.getErrorStream() : sdhash.getInputStream());
+            int length;
+
+            while ((length = readLine(in)) >= 0) {
+                output.handle(line, length);
+            }
+
+            int exitValue = sdhash.waitFor();
+
+            if (failed != null && exitValue == 0) {
+                throw failed;
+            }
+
+            return exitValue;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for sdhash");
+        } finally {
+            job = null;
+            sdhash.destroy();
+        }
+    }
+
+    /**
+     * Round-trips the sentinel through the shell to check that it responds.
+     */
+    void ping() throws IOException {
+        if (!WINDOWS) {
+            writeSentinel();
+            readUntilSentinel(null);
+        }
+    }
+
+    /**
+     * @return false if the shell has exited
+     */
+    boolean isAlive() {
+        if (WINDOWS) {
+            return true;
+        }
+
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * Kills the running sdhash, if any, and the shell. Whoever is reading the
+     * output of the job gets the end of the stream, and whoever is writing
+     * its input gets an error.
+     */
+    void destroy() {
+        destroyed = true;
+
+        if (WINDOWS) {
+            Process sdhash = job;
+
+            if (sdhash != null) {
+                sdhash.destroy();
+            }
+
+            errors.delete();
+            return;
+        }
+
+        killChildren();
+        process.destroy();
+
+        if (fifoCreated) {
+            releaseFifo();
+        }
+
+        errors.delete();
+    }
+
+    private void killChildren() {
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder("pkill", "-KILL", "-P", shellPid);
+            processBuilder.redirectErrorStream(true);
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null")));
+            processBuilder.start().waitFor();
+        } catch (IOException ex) {
+            // No pkill, only the shell is destroyed
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Removes the named pipe. It is held open for reading meanwhile, so that
+     * a writer waiting for sdhash to open it is let through, and then gets an
+     * error when the pipe is closed.
+     */
+    private void releaseFifo() {
+        try {
+            RandomAccessFile reader = new RandomAccessFile(fifo, "rw");
+
+            try {
+                fifo.delete();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ex) {
+            fifo.delete();
+        }
+    }
+
+    private StringBuilder getCommand(List<String> args) {
+        StringBuilder command = new StringBuilder(quote(executable));
+
+        for (String arg : args) {
+            command.append(" ").append(quote(arg));
+        }
+
+        return command;
+    }
+
+    private void write(String line) throws IOException {
+        stdin.write(line);
+        stdin.newLine();
+        stdin.flush();
+    }
+
+    private void writeSentinel() throws IOException {
+        write("echo " + sentinel + " $?");
+    }
+
+    /**
+     * If the output of the command does not end with a newline, the sentinel
+     * follows its last line on the same line. That part is handed out as a
+     * line of its own.
+     *
+     * @return the exit status of the last command before the sentinel
+     */
+    private int readUntilSentinel(SdhashWorkerPool.Output output) throws IOException {
+        int length;
+
+        while ((length = readLine(stdout)) >= 0) {
+            int start = findSentinel(length);
+
+            if (start >= 0) {
+                if (start > 0 && output != null) {
+                    output.handle(line, start);
+                }
+
+                return status;
+            }
+
+            if (output != null) {
+                output.handle(line, length);
+            }
+        }
+
+        throw new EOFException("sdhash worker exited");
+    }
+
+    private void checkStatus(int exitValue) throws IOException {
+        if (exitValue == 0) {
+            return;
+        }
+
+        String message = "";
+
+        if (errors.exists()) {
+            message = new String(Files.readAllBytes(errors.toPath())).trim();
+        }
+
+        if (message.length() > MAX_ERROR_LENGTH) {
+            message = message.substring(0, MAX_ERROR_LENGTH);
+        }
+
+        throw new IOException(String.format("sdhash exited with status %d: %s", exitValue, message));
+    }
+
+    /**
+     * Reads the next line into the line buffer without the line separator.
+     *
+     * @return the length of the line, or -1 at the end of the stream
+     */
+    private int readLine(InputStream in) throws IOException {
+        int length = 0;
+        int b;
+
+        while ((b = in.read()) >= 0 && b != '\n') {
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+
+            line[length++] = (byte) b;
+        }
+
+        if (b < 0 && length == 0) {
+            return -1;
+        }
+
+        return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+    }
+
+    /**
+     * Checks if the line ends with the sentinel followed by an exit status,
+     * which is kept in status.
+     *
+     * @return where the sentinel starts in the line, or -1 if the line does
+     * not end with it
+     */
+    private int findSentinel(int length) {
+        int end = length;
+
+        while (end > 0 && line[end - 1] <= ' ') {
+            end--;
+        }
+
+        int digits = end;
+
+        while (digits > 0 && line[digits - 1] >= '0' && line[digits - 1] <= '9') {
+            digits--;
+        }
+
+        if (digits == end || digits == 0 || line[digits - 1] != ' ') {
+            return -1;
+        }
+
+        int start = digits - 1 - sentinelBytes.length;
+
+        if (start < 0) {
+            return -1;
+        }
+
+        for (int i = 0; i < sentinelBytes.length; i++) {
+            if (line[start + i] != sentinelBytes[i]) {
+                return -1;
+            }
+        }
+
+        status = 0;
+
+        for (int pos = digits; pos < end; pos++) {
+            status = status * 10 + line[pos] - '0';
+        }
+
+        return start;
+    }
+
+    private static String quote(String arg) {
+        return "'" + arg.replace("'", "'\\''") + "'";
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A fixed number of reusable sdhash workers. Workers are started lazily,
+ * checked before they are handed out, and replaced if they crash or exceed
+ * the per-call timeout.
+ *
+ * @author pcbje
+ */
+public class SdhashWorkerPool {
+
+    /**
+     * Writes the data that a piped sdhash call reads from stdin.
+     */
+    public interface Input {
+
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Receives the output of an sdhash call one line at a time. The buffer is
+     * reused for the next line, so it must not be kept.
+     */
+    public interface Output {
+
+        void handle(byte[] line, int length) throws IOException;
+    }
+
+    private interface Job {
+
+        void run(SdhashWorker worker) throws IOException;
+    }
+
+    static final String DEFAULT_EXECUTABLE = "sdhash";
+    private final ConcurrentLinkedQueue<SdhashWorker> idle = new ConcurrentLinkedQueue<>();
+    private final Semaphore permits;
+    private final ExecutorService callers;
+    private final String executable;
+    private volatile long timeoutMillis;
+    private volatile boolean closed;
+
+    public SdhashWorkerPool(int size, long timeoutMillis) {
+        this(size, timeoutMillis, DEFAULT_EXECUTABLE);
+    }
+
+    /**
+     * @param executable the sdhash command that the workers run
+     */
+    SdhashWorkerPool(int size, long timeoutMillis, String executable) {
+        this.executable = executable;
+        this.permits = new Semaphore(Math.max(1, size), true);
+        this.timeoutMillis = timeoutMillis;
+        this.callers = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ahbm-sdhash-worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Runs sdhash with the given arguments on an idle worker.
+     *
+     * @param errorsOnly return what sdhash writes to stderr instead of stdout
+     * @return the output lines of the command
+     */
+    public List<String> execute(boolean errorsOnly, String... args) throws IOException {
+        final List<String> lines = new ArrayList<>();
+
+        execute(errorsOnly, new Output() {
+            @Override
+            public void handle(byte[] line, int length) {
+                lines.add(new String(line, 0, length));
+            }
+        }, args);
+
+        return lines;
+    }
+
+    /**
+     * Runs sdhash with the given arguments on an idle worker and streams its
+     * output to the given handler, on a thread of the pool.
+     *
+     * @param errorsOnly hand out what sdhash writes to stderr instead of
+     * stdout
+     */
+    public void execute(final boolean errorsOnly, final Output output, final String... args) throws IOException {
+        call(new Job() {
+            @Override
+            public void run(SdhashWorker worker) throws IOException {
+                worker.run(Arrays.asList(args), errorsOnly, output);
+            }
+        });
+    }
+
+    /**
+     * Runs sdhash on an idle worker with input streamed to its stdin. The
+     * input is written on a thread of the pool, so the timeout covers it.
+     *
+     * @return the stdout lines of the command
+     * @throws IOException if the input could not be written or sdhash exits
+     * with an error, which then includes what sdhash wrote to stderr
+     */
+    public List<String> executePiped(final Input input, final String... args) throws IOException {
+        final List<String> lines = new ArrayList<>();
+
+        call(new Job() {
+            @Override
+            public void run(SdhashWorker worker) throws IOException {
+                worker.runPiped(Arrays.asList(args), input, new Output() {
+                    @Override
+                    public void handle(byte[] line, int length) {
+                        lines.add(new String(line, 0, length));
+                    }
+                });
+            }
+        });
+
+        return lines;
+    }
+
+    /**
+     * @throws IOException if the pool is closed
+     */
+    private void call(final Job job) throws IOException {
+        if (closed) {
+            throw new IOException("The sdhash worker pool is closed");
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an sdhash worker");
+        }
+
+        SdhashWorker worker = null;
+        boolean healthy = false;
+
+        try {
+            worker = borrow();
+
+            final SdhashWorker runner = worker;
+
+            Future<Void> result;
+
+            try {
+                result = callers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        job.run(runner);
+                        return null;
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                throw new IOException("The sdhash worker pool is closed", ex);
+            }
+
+            try {
+                result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                healthy = true;
+            } catch (TimeoutException ex) {
+                result.cancel(true);
+                throw new IOException(String.format("sdhash did not finish within %d ms", timeoutMillis));
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+
+                throw new IOException(ex.getCause());
+            } catch (InterruptedException ex) {
+                result.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for sdhash");
+            }
+        } finally {
+            release(worker, healthy);
+        }
+    }
+
+    /**
+     * Stops all idle workers and the threads that run the calls. Workers that
+     * are busy finish their call and are stopped when they are released.
+     */
+    public void close() {
+        closed = true;
+
+        callers.shutdown();
+
+        SdhashWorker worker;
+
+        while ((worker = idle.poll()) != null) {
+            worker.destroy();
+        }
+    }
+
+    private SdhashWorker borrow() throws IOException {
+        SdhashWorker worker;
+
+        while ((worker = idle.poll()) != null) {
+            if (worker.isAlive()) {
+                return worker;
+            }
+
+            worker.destroy();
+        }
+
+        return new SdhashWorker(executable);
+    }
+
+    private void release(SdhashWorker worker, boolean healthy) {
+        if (worker != null) {
+            if (healthy && !closed) {
+                idle.offer(worker);
+            } else {
+                worker.destroy();
+            }
+        }
+
+        permits.release();
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openide.util.Exceptions;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * A chain of SkipRules that decides which files are not worth hashing. The
+ * first rule that skips a file is counted, and the counts are reported when
+ * the job ends. A rule that fails does not skip the file.
+ *
+ * @author pcbje
+ */
+public class SkipPolicy {
+
+    private final List<SkipRule> rules = new CopyOnWriteArrayList<>();
+    private final List<AtomicLong> counts = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return the rules enabled by the settings, cheapest first
+     */
+    public static SkipPolicy fromSettings(AhbmJobSettings settings) {
+        SkipPolicy policy = new SkipPolicy();
+
+        if (settings.isSkipKnownGood()) {
+            policy.addRule(new KnownGood());
+        }
+
+        if (settings.getMaxFileSizeInBytes() > 0 && !settings.isBlockMode()) {
+            policy.addRule(new MaximumSize(settings.getMaxFileSizeInBytes()));
+        }
+
+        if (settings.getMinFileSize() > 0) {
+            policy.addRule(new MinimumSize(settings.getMinFileSize()));
+        }
+
+        if (!settings.getSkipMimeTypes().trim().isEmpty()) {
+            policy.addRule(new MimeType(settings.getSkipMimeTypes().split(",")));
+        }
+
+        if (settings.isSampleEntropy()) {
+            policy.addRule(new SampledEntropy(SampledEntropy.SAMPLES, SampledEntropy.SAMPLE_SIZE));
+        }
+
+        return policy;
+    }
+
+    public synchronized void addRule(SkipRule rule) {
+        counts.add(new AtomicLong());
+        rules.add(rule);
+    }
+
+    /**
+     * @return the first rule that skips the file, or null if it should be
+     * hashed
+     */
+    public SkipRule check(AbstractFile file) {
+        for (int i = 0; i < rules.size(); i++) {
+            SkipRule rule = rules.get(i);
+
+            try {
+                if (rule.skip(file)) {
+                    counts.get(i).incrementAndGet();
+                    return rule;
+                }
+            } catch (TskCoreException | RuntimeException ex) {
+                Exceptions.printStackTrace(ex);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the number of files skipped by each rule, in the order of the
+     * rules
+     */
+    public Map<String, Long> getSkipCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+
+        for (int i = 0; i < rules.size(); i++) {
+            result.put(rules.get(i).getName(), counts.get(i).get());
+        }
+
+        return result;
+    }
+
+    /**
+     * @return a one line summary such as "Skipped 3 files: 2 known good, 1
+     * smaller than 512 bytes", or null if no files were skipped
+     */
+    public String getSummary() {
+        long total = 0;
+        List<String> parts = new ArrayList<>();
+
+        for (Map.Entry<String, Long> count : getSkipCounts().entrySet()) {
+            if (count.getValue() > 0) {
+                total += count.getValue();
+                parts.add(count.getValue() + " " + count.getKey());
+            }
+        }
+
+        if (total == 0) {
+            return null;
+        }
+
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Skipped %d files: ", total));
+
+        for (int i = 0; i < parts.size(); i++) {
+            summary.append(i > 0 ? ", " : "").append(parts.get(i));
+        }
+
+        return summary.toString();
+    }
+
+    /**
+     * Skips files that the hash lookup module has found in a known good set.
+     */
+    public static class KnownGood implements SkipRule {
+
+        @Override
+        public String getName() {
+            return "known good";
+        }
+
+        @Override
+        public boolean skip(AbstractFile file) {
+            return file.getKnown() == TskData.FileKnown.KNOWN;
+        }
+    }
+
+    /**
+     * Skips files larger than the configured maximum.
+     */
+    public static class MaximumSize implements SkipRule {
+
+        private final long maxSize;
+
+        public MaximumSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public String getName() {
+            return String.format("larger than %d bytes", maxSize);
+        }
+
+        @Override
+        public boolean skip(AbstractFile file) {
+            return file.getSize() > maxSize;
+        }
+    }
+
+    /**
+     * Skips files smaller than the minimum size that sdhash hashes.
+     */
+    public static class MinimumSize implements SkipRule {
+
+        private final long minSize;
+
+        public MinimumSize(long minSize) {
+            this.minSize = minSize;
+        }
+
+        @Override
+        public String getName() {
+            return String.format("smaller than %d bytes", minSize);
+        }
+
+        @Override
+        public boolean skip(AbstractFile file) {
+            return file.getSize() < minSize;
+        }
+    }
+
+    /**
+     * Skips files by the type signature that the file type identification
+     * module stores on the file. A type ending with "/*" matches all subtypes.
+     * Files that have not been identified are not skipped.
+     */
+    public static class MimeType implements SkipRule {
+
+        private final List<String> types = new ArrayList<>();
+
+        public MimeType(String... types) {
+            for (String type : types) {
+                if (!type.trim().isEmpty()) {
+                    this.types.add(type.trim().toLowerCase());
+                }
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "of skipped file types";
+        }
+
+        @Override
+        public boolean skip(AbstractFile file) throws TskCoreException {
+            List<BlackboardAttribute> attributes = file.getGenInfoAttributes(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_FILE_TYPE_SIG);
+
+            if (attributes == null) {
+                return false;
+            }
+
+            for (BlackboardAttribute attribute : attributes) {
+                String fileType = attribute.getValueString();
+
+                if (fileType != null && matches(fileType.trim().toLowerCase())) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private boolean matches(String fileType) {
+            for (String type : types) {
+                if (type.endsWith("/*") ? fileType.startsWith(type.substring(0, type.length() - 1)) : fileType.equals(type)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Reads a few evenly spaced samples of the file and skips it if none of
+     * their 64 byte windows has a non-zero entropy rank. SdbfGenerator only
+     * selects features from ranked windows, so such files are typically all
+     * zeros or too uniform to produce a digest that can match anything.
+     */
+    public static class SampledEntropy implements SkipRule {
+
+        public static final int SAMPLES = 8;
+        public static final int SAMPLE_SIZE = 4096;
+        private final int samples;
+        private final int sampleSize;
+
+        public SampledEntropy(int samples, int sampleSize) {
+            this.samples = Math.max(1, samples);
+            this.sampleSize = Math.max(Entropy64.WINDOW_SIZE, sampleSize);
+        }
+
+        @Override
+        public String getName() {
+            return "without ranked features";
+        }
+
+        @Override
+        public boolean skip(AbstractFile file) throws TskCoreException {
+            long size = file.getSize();
+
+            if (size < Entropy64.WINDOW_SIZE) {
+                return false;
+            }
+
+            byte[] buffer = new byte[(int) Math.min(sampleSize, size)];
+            int[] ascii = new int[256];
+            long step = samples > 1 ? (size - buffer.length) / (samples - 1) : 0;
+
+            for (int i = 0; i < samples; i++) {
+                long offset = i * step;
+                int read = file.read(buffer, offset, buffer.length);
+
+                for (int pos = 0; pos + Entropy64.WINDOW_SIZE <= read; pos += Entropy64.WINDOW_SIZE) {
+                    if (Entropy64.rank(Entropy64.init(buffer, pos, ascii)) > 0) {
+                        return false;
+                    }
+                }
+
+                if (step == 0) {
+                    break;
+                }
+            }
+
+            return true;
+        }
+    }
+}
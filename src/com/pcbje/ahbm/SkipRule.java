@@ -0,0 +1,37 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * A rule in a SkipPolicy. Rules are evaluated before any of the file content
+ * is hashed and must be safe to call from several ingest threads.
+ *
+ * @author pcbje
+ */
+public interface SkipRule {
+
+    /**
+     * @return a short description of the skipped files, used in the summary
+     * at the end of the job
+     */
+    String getName();
+
+    /**
+     * @return true if the file can not produce a useful SDBF
+     */
+    boolean skip(AbstractFile file) throws TskCoreException;
+}
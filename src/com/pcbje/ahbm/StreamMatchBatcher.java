@@ -0,0 +1,139 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import com.pcbje.ahbm.matchable.Matchable;
+import com.pcbje.ahbm.matchable.MatchableHandler;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.openide.util.Exceptions;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ * Collects probe SDBFs from consecutive ingest calls and matches them with a
+ * single pass over each stream set. A batch is matched when it holds
+ * maxSize probes, when its oldest probe has waited maxDelay milliseconds, or
+ * when the batcher is closed.
+ *
+ * @author pcbje
+ */
+public class StreamMatchBatcher {
+
+    private final SdbfSet sdbfSet;
+    private final MatchableHandler matchHandler;
+    private final int maxSize;
+    private final long maxDelay;
+    private final ScheduledExecutorService timer;
+    private final Object flushLock = new Object();
+    private Map<String, Matchable> probes = new HashMap<>();
+    private StringBuilder sdbfs = new StringBuilder();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public StreamMatchBatcher(SdbfSet sdbfSet, MatchableHandler matchHandler, int maxSize, long maxDelay) {
+        this.sdbfSet = sdbfSet;
+        this.matchHandler = matchHandler;
+        this.maxSize = Math.max(1, maxSize);
+        this.maxDelay = maxDelay;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ahbm-batch-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds a probe to the current batch. The batch is matched by the calling
+     * thread if it is full.
+     */
+    public void add(Content content, String sdbf) throws Exception {
+        boolean full;
+
+        synchronized (this) {
+            probes.put(SdbfSet.getProbeName(content), new Matchable(content.getName(), content));
+            sdbfs.append(sdbf);
+
+            full = probes.size() >= maxSize;
+
+            if (!full && scheduledFlush == null) {
+                scheduledFlush = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            flush();
+                        } catch (Exception ex) {
+                            Exceptions.printStackTrace(ex);
+                        }
+                    }
+                }, maxDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Matches the probes collected so far and hands the results to the match
+     * handler.
+     */
+    public void flush() throws Exception {
+        synchronized (flushLock) {
+            Map<String, Matchable> batch;
+            String batchSdbfs;
+
+            synchronized (this) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+
+                if (probes.isEmpty()) {
+                    return;
+                }
+
+                batch = probes;
+                batchSdbfs = sdbfs.toString();
+
+                probes = new HashMap<>();
+                sdbfs = new StringBuilder();
+            }
+
+            matchHandler.handleStreamMatches(sdbfSet.streamMatch(batch, batchSdbfs));
+        }
+    }
+
+    /**
+     * Matches the remaining probes and stops the timer.
+     */
+    public void close() throws Exception {
+        try {
+            flush();
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return probes.size();
+    }
+}
@@ -15,6 +15,8 @@ package com.pcbje.ahbm.config;
 
 import com.pcbje.ahbm.AhbmJobSettings;
 import java.util.Properties;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.JTextField;
 import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettingsPanel;
 
 /**
@@ -30,13 +32,53 @@ public class AHBMConfig extends IngestModuleIngestJobSettingsPanel {
         skipKnownGood.setSelected(settings.isSkipKnownGood());
         maxFileSize.setText(Integer.toString(settings.getMaxFileSize()));
         readBufferSize.setText(Integer.toString(settings.getReadBufferSize()));
+        engine.setModel(new DefaultComboBoxModel<>(AhbmJobSettings.Engine.values()));
+        engine.setSelectedItem(settings.getEngine());
+        sdhashTimeout.setText(Integer.toString(settings.getSdhashTimeout()));
+        batchSize.setText(Integer.toString(settings.getBatchSize()));
+        batchDelay.setText(Integer.toString(settings.getBatchDelay()));
+        pipelineThreads.setText(Integer.toString(settings.getPipelineThreads()));
+        pipelineQueueSize.setText(Integer.toString(settings.getPipelineQueueSize()));
+        compareParallelism.setText(Integer.toString(settings.getCompareParallelism()));
+        cacheSdbfs.setSelected(settings.isCacheSdbfs());
+        storeSdbfs.setSelected(settings.isStoreSdbfs());
+        minFileSize.setText(Integer.toString(settings.getMinFileSize()));
+        skipMimeTypes.setText(settings.getSkipMimeTypes());
+        sampleEntropy.setSelected(settings.isSampleEntropy());
+        blockMode.setSelected(settings.isBlockMode());
+        blockSegmentSize.setText(Integer.toString(settings.getBlockSegmentSize()));
+        prefetchMemory.setText(Integer.toString(settings.getPrefetchMemory()));
+        minScore.setText(Integer.toString(settings.getMinScore()));
+        maxMatches.setText(Integer.toString(settings.getMaxMatches()));
+        referenceSetLimits.setText(settings.getReferenceSetLimits());
     }
 
     public AhbmJobSettings getSettings() {
         validateConfig();
 
-        return new AhbmJobSettings(againstExisting.isSelected(), skipKnownGood.isSelected(),
+        AhbmJobSettings result = new AhbmJobSettings(againstExisting.isSelected(), skipKnownGood.isSelected(),
                 Integer.parseInt(maxFileSize.getText()), Integer.parseInt(readBufferSize.getText()));
+
+        result.setEngine((AhbmJobSettings.Engine) engine.getSelectedItem());
+        result.setSdhashTimeout(getInt(sdhashTimeout));
+        result.setBatchSize(getInt(batchSize));
+        result.setBatchDelay(getInt(batchDelay));
+        result.setPipelineThreads(getInt(pipelineThreads));
+        result.setPipelineQueueSize(getInt(pipelineQueueSize));
+        result.setCompareParallelism(getInt(compareParallelism));
+        result.setCacheSdbfs(cacheSdbfs.isSelected());
+        result.setStoreSdbfs(storeSdbfs.isSelected());
+        result.setMinFileSize(getInt(minFileSize));
+        result.setSkipMimeTypes(skipMimeTypes.getText().trim());
+        result.setSampleEntropy(sampleEntropy.isSelected());
+        result.setBlockMode(blockMode.isSelected());
+        result.setBlockSegmentSize(getInt(blockSegmentSize));
+        result.setPrefetchMemory(getInt(prefetchMemory));
+        result.setMinScore(getInt(minScore));
+        result.setMaxMatches(getInt(maxMatches));
+        result.setReferenceSetLimits(referenceSetLimits.getText().trim());
+
+        return result;
     }
 
     private void validateConfig() {
@@ -49,6 +91,43 @@ public class AHBMConfig extends IngestModuleIngestJobSettingsPanel {
         if (bs <= 0) {
             throw new IllegalArgumentException("Buffer size must be more than 0");
         }
+        if (getInt(sdhashTimeout) <= 0) {
+            throw new IllegalArgumentException("Sdhash timeout must be more than 0");
+        }
+        if (getInt(batchSize) <= 0) {
+            throw new IllegalArgumentException("Batch size must be more than 0");
+        }
+        if (getInt(batchDelay) <= 0) {
+            throw new IllegalArgumentException("Batch delay must be more than 0");
+        }
+        if (getInt(pipelineThreads) < 0) {
+            throw new IllegalArgumentException("Pipeline threads cannot be negative");
+        }
+        if (getInt(pipelineQueueSize) <= 0) {
+            throw new IllegalArgumentException("Pipeline queue size must be more than 0");
+        }
+        if (getInt(compareParallelism) <= 0) {
+            throw new IllegalArgumentException("Compare parallelism must be more than 0");
+        }
+        if (getInt(minFileSize) < 0) {
+            throw new IllegalArgumentException("Min file size cannot be negative");
+        }
+        if (getInt(blockSegmentSize) <= 0) {
+            throw new IllegalArgumentException("Block segment size must be more than 0");
+        }
+        if (getInt(prefetchMemory) < 0) {
+            throw new IllegalArgumentException("Prefetch memory cannot be negative");
+        }
+        if (getInt(minScore) < 0 || getInt(minScore) > 100) {
+            throw new IllegalArgumentException("Min score must be between 0 and 100");
+        }
+        if (getInt(maxMatches) < 0) {
+            throw new IllegalArgumentException("Max matches cannot be negative");
+        }
+    }
+
+    private static int getInt(JTextField field) {
+        return Integer.parseInt(field.getText().trim());
     }
 
     /**
@@ -74,6 +153,60 @@ public class AHBMConfig extends IngestModuleIngestJobSettingsPanel {
         jLabel9 = new javax.swing.JLabel();
         againstExisting = new javax.swing.JCheckBox();
         jLabel10 = new javax.swing.JLabel();
+        jLabel11 = new javax.swing.JLabel();
+        engine = new javax.swing.JComboBox<>();
+        jLabel12 = new javax.swing.JLabel();
+        jLabel13 = new javax.swing.JLabel();
+        sdhashTimeout = new javax.swing.JTextField();
+        jLabel14 = new javax.swing.JLabel();
+        jLabel15 = new javax.swing.JLabel();
+        batchSize = new javax.swing.JTextField();
+        jLabel16 = new javax.swing.JLabel();
+        jLabel17 = new javax.swing.JLabel();
+        batchDelay = new javax.swing.JTextField();
+        jLabel18 = new javax.swing.JLabel();
+        jLabel19 = new javax.swing.JLabel();
+        pipelineThreads = new javax.swing.JTextField();
+        jLabel20 = new javax.swing.JLabel();
+        jLabel21 = new javax.swing.JLabel();
+        pipelineQueueSize = new javax.swing.JTextField();
+        jLabel22 = new javax.swing.JLabel();
+        jLabel23 = new javax.swing.JLabel();
+        compareParallelism = new javax.swing.JTextField();
+        jLabel24 = new javax.swing.JLabel();
+        jLabel25 = new javax.swing.JLabel();
+        cacheSdbfs = new javax.swing.JCheckBox();
+        jLabel26 = new javax.swing.JLabel();
+        jLabel27 = new javax.swing.JLabel();
+        storeSdbfs = new javax.swing.JCheckBox();
+        jLabel28 = new javax.swing.JLabel();
+        jLabel29 = new javax.swing.JLabel();
+        minFileSize = new javax.swing.JTextField();
+        jLabel30 = new javax.swing.JLabel();
+        jLabel31 = new javax.swing.JLabel();
+        skipMimeTypes = new javax.swing.JTextField();
+        jLabel32 = new javax.swing.JLabel();
+        jLabel33 = new javax.swing.JLabel();
+        sampleEntropy = new javax.swing.JCheckBox();
+        jLabel34 = new javax.swing.JLabel();
+        jLabel35 = new javax.swing.JLabel();
+        blockMode = new javax.swing.JCheckBox();
+        jLabel36 = new javax.swing.JLabel();
+        jLabel37 = new javax.swing.JLabel();
+        blockSegmentSize = new javax.swing.JTextField();
+        jLabel38 = new javax.swing.JLabel();
+        jLabel39 = new javax.swing.JLabel();
+        prefetchMemory = new javax.swing.JTextField();
+        jLabel40 = new javax.swing.JLabel();
+        jLabel41 = new javax.swing.JLabel();
+        minScore = new javax.swing.JTextField();
+        jLabel42 = new javax.swing.JLabel();
+        jLabel43 = new javax.swing.JLabel();
+        maxMatches = new javax.swing.JTextField();
+        jLabel44 = new javax.swing.JLabel();
+        jLabel45 = new javax.swing.JLabel();
+        referenceSetLimits = new javax.swing.JTextField();
+        jLabel46 = new javax.swing.JLabel();
 
         org.openide.awt.Mnemonics.setLocalizedText(jLabel1, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel1.text")); // NOI18N
 
@@ -107,6 +240,130 @@ public class AHBMConfig extends IngestModuleIngestJobSettingsPanel {
         jLabel10.setForeground(new java.awt.Color(102, 102, 102));
         org.openide.awt.Mnemonics.setLocalizedText(jLabel10, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel10.text")); // NOI18N
 
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel11, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel11.text")); // NOI18N
+
+        jLabel12.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel12, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel12.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel13, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel13.text")); // NOI18N
+
+        sdhashTimeout.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.sdhashTimeout.text")); // NOI18N
+
+        jLabel14.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel14, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel14.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel15, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel15.text")); // NOI18N
+
+        batchSize.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.batchSize.text")); // NOI18N
+
+        jLabel16.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel16, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel16.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel17, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel17.text")); // NOI18N
+
+        batchDelay.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.batchDelay.text")); // NOI18N
+
+        jLabel18.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel18, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel18.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel19, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel19.text")); // NOI18N
+
+        pipelineThreads.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.pipelineThreads.text")); // NOI18N
+
+        jLabel20.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel20, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel20.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel21, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel21.text")); // NOI18N
+
+        pipelineQueueSize.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.pipelineQueueSize.text")); // NOI18N
+
+        jLabel22.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel22, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel22.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel23, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel23.text")); // NOI18N
+
+        compareParallelism.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.compareParallelism.text")); // NOI18N
+
+        jLabel24.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel24, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel24.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel25, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel25.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(cacheSdbfs, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.cacheSdbfs.text")); // NOI18N
+
+        jLabel26.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel26, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel26.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel27, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel27.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(storeSdbfs, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.storeSdbfs.text")); // NOI18N
+
+        jLabel28.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel28, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel28.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel29, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel29.text")); // NOI18N
+
+        minFileSize.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.minFileSize.text")); // NOI18N
+
+        jLabel30.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel30, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel30.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel31, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel31.text")); // NOI18N
+
+        skipMimeTypes.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.skipMimeTypes.text")); // NOI18N
+
+        jLabel32.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel32, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel32.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel33, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel33.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(sampleEntropy, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.sampleEntropy.text")); // NOI18N
+
+        jLabel34.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel34, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel34.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel35, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel35.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(blockMode, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.blockMode.text")); // NOI18N
+
+        jLabel36.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel36, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel36.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel37, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel37.text")); // NOI18N
+
+        blockSegmentSize.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.blockSegmentSize.text")); // NOI18N
+
+        jLabel38.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel38, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel38.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel39, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel39.text")); // NOI18N
+
+        prefetchMemory.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.prefetchMemory.text")); // NOI18N
+
+        jLabel40.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel40, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel40.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel41, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel41.text")); // NOI18N
+
+        minScore.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.minScore.text")); // NOI18N
+
+        jLabel42.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel42, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel42.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel43, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel43.text")); // NOI18N
+
+        maxMatches.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.maxMatches.text")); // NOI18N
+
+        jLabel44.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel44, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel44.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel45, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel45.text")); // NOI18N
+
+        referenceSetLimits.setText(org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.referenceSetLimits.text")); // NOI18N
+
+        jLabel46.setForeground(new java.awt.Color(102, 102, 102));
+        org.openide.awt.Mnemonics.setLocalizedText(jLabel46, org.openide.util.NbBundle.getMessage(AHBMConfig.class, "AHBMConfig.jLabel46.text")); // NOI18N
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -117,7 +374,25 @@ public class AHBMConfig extends IngestModuleIngestJobSettingsPanel {
                     .addComponent(jLabel9, javax.swing.GroupLayout.Alignment.TRAILING)
                     .addComponent(jLabel7, javax.swing.GroupLayout.Alignment.TRAILING)
                     .addComponent(jLabel1, javax.swing.GroupLayout.Alignment.TRAILING)
-                    .addComponent(jLabel3, javax.swing.GroupLayout.Alignment.TRAILING))
+                    .addComponent(jLabel3, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel11, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel13, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel15, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel17, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel19, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel21, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel23, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel25, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel27, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel29, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel31, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel33, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel35, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel37, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel39, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel41, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel43, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(jLabel45, javax.swing.GroupLayout.Alignment.TRAILING))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(layout.createSequentialGroup()
@@ -137,7 +412,79 @@ public class AHBMConfig extends IngestModuleIngestJobSettingsPanel {
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(againstExisting)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
-                        .addComponent(jLabel10)))
+                        .addComponent(jLabel10))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(engine, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel12))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(sdhashTimeout, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel14))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(batchSize, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel16))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(batchDelay, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel18))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(pipelineThreads, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel20))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(pipelineQueueSize, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel22))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(compareParallelism, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel24))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(cacheSdbfs)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(jLabel26))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(storeSdbfs)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(jLabel28))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(minFileSize, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel30))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(skipMimeTypes, javax.swing.GroupLayout.PREFERRED_SIZE, 240, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel32))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(sampleEntropy)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(jLabel34))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(blockMode)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(jLabel36))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(blockSegmentSize, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel38))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(prefetchMemory, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel40))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(minScore, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel42))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(maxMatches, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel44))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(referenceSetLimits, javax.swing.GroupLayout.PREFERRED_SIZE, 240, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(jLabel46)))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
         layout.setVerticalGroup(
@@ -167,23 +514,167 @@ public class AHBMConfig extends IngestModuleIngestJobSettingsPanel {
                     .addComponent(jLabel6))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(jLabel5)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel11)
+                    .addComponent(engine, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel12))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel13)
+                    .addComponent(sdhashTimeout, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel14))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel15)
+                    .addComponent(batchSize, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel16))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel17)
+                    .addComponent(batchDelay, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel18))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel19)
+                    .addComponent(pipelineThreads, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel20))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel21)
+                    .addComponent(pipelineQueueSize, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel22))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel23)
+                    .addComponent(compareParallelism, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel24))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.CENTER)
+                    .addComponent(jLabel25)
+                    .addComponent(cacheSdbfs)
+                    .addComponent(jLabel26))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.CENTER)
+                    .addComponent(jLabel27)
+                    .addComponent(storeSdbfs)
+                    .addComponent(jLabel28))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel29)
+                    .addComponent(minFileSize, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel30))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel31)
+                    .addComponent(skipMimeTypes, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel32))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.CENTER)
+                    .addComponent(jLabel33)
+                    .addComponent(sampleEntropy)
+                    .addComponent(jLabel34))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.CENTER)
+                    .addComponent(jLabel35)
+                    .addComponent(blockMode)
+                    .addComponent(jLabel36))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel37)
+                    .addComponent(blockSegmentSize, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel38))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel39)
+                    .addComponent(prefetchMemory, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel40))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel41)
+                    .addComponent(minScore, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel42))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel43)
+                    .addComponent(maxMatches, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel44))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel45)
+                    .addComponent(referenceSetLimits, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel46))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
     }// </editor-fold>//GEN-END:initComponents
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JCheckBox againstExisting;
+    private javax.swing.JTextField batchDelay;
+    private javax.swing.JTextField batchSize;
+    private javax.swing.JCheckBox blockMode;
+    private javax.swing.JTextField blockSegmentSize;
+    private javax.swing.JCheckBox cacheSdbfs;
+    private javax.swing.JTextField compareParallelism;
+    private javax.swing.JComboBox<com.pcbje.ahbm.AhbmJobSettings.Engine> engine;
     private javax.swing.JLabel jLabel1;
     private javax.swing.JLabel jLabel10;
+    private javax.swing.JLabel jLabel11;
+    private javax.swing.JLabel jLabel12;
+    private javax.swing.JLabel jLabel13;
+    private javax.swing.JLabel jLabel14;
+    private javax.swing.JLabel jLabel15;
+    private javax.swing.JLabel jLabel16;
+    private javax.swing.JLabel jLabel17;
+    private javax.swing.JLabel jLabel18;
+    private javax.swing.JLabel jLabel19;
     private javax.swing.JLabel jLabel2;
+    private javax.swing.JLabel jLabel20;
+    private javax.swing.JLabel jLabel21;
+    private javax.swing.JLabel jLabel22;
+    private javax.swing.JLabel jLabel23;
+    private javax.swing.JLabel jLabel24;
+    private javax.swing.JLabel jLabel25;
+    private javax.swing.JLabel jLabel26;
+    private javax.swing.JLabel jLabel27;
+    private javax.swing.JLabel jLabel28;
+    private javax.swing.JLabel jLabel29;
     private javax.swing.JLabel jLabel3;
+    private javax.swing.JLabel jLabel30;
+    private javax.swing.JLabel jLabel31;
+    private javax.swing.JLabel jLabel32;
+    private javax.swing.JLabel jLabel33;
+    private javax.swing.JLabel jLabel34;
+    private javax.swing.JLabel jLabel35;
+    private javax.swing.JLabel jLabel36;
+    private javax.swing.JLabel jLabel37;
+    private javax.swing.JLabel jLabel38;
+    private javax.swing.JLabel jLabel39;
     private javax.swing.JLabel jLabel4;
+    private javax.swing.JLabel jLabel40;
+    private javax.swing.JLabel jLabel41;
+    private javax.swing.JLabel jLabel42;
+    private javax.swing.JLabel jLabel43;
+    private javax.swing.JLabel jLabel44;
+    private javax.swing.JLabel jLabel45;
+    private javax.swing.JLabel jLabel46;
     private javax.swing.JLabel jLabel5;
     private javax.swing.JLabel jLabel6;
     private javax.swing.JLabel jLabel7;
     private javax.swing.JLabel jLabel8;
     private javax.swing.JLabel jLabel9;
     private javax.swing.JTextField maxFileSize;
+    private javax.swing.JTextField maxMatches;
+    private javax.swing.JTextField minFileSize;
+    private javax.swing.JTextField minScore;
+    private javax.swing.JTextField pipelineQueueSize;
+    private javax.swing.JTextField pipelineThreads;
+    private javax.swing.JTextField prefetchMemory;
     private javax.swing.JTextField readBufferSize;
+    private javax.swing.JTextField referenceSetLimits;
+    private javax.swing.JCheckBox sampleEntropy;
+    private javax.swing.JTextField sdhashTimeout;
     private javax.swing.JCheckBox skipKnownGood;
+    private javax.swing.JTextField skipMimeTypes;
+    private javax.swing.JCheckBox storeSdbfs;
     // End of variables declaration//GEN-END:variables
 }
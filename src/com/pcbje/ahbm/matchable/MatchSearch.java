@@ -0,0 +1,129 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm.matchable;
+
+import com.pcbje.ahbm.SdbfSet;
+import java.awt.EventQueue;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.netbeans.api.progress.ProgressHandle;
+import org.netbeans.api.progress.ProgressHandleFactory;
+import org.openide.util.Cancellable;
+import org.openide.util.Exceptions;
+
+/**
+ * Runs a search that the user started from the viewer or the data results off
+ * the Swing thread, with a progress bar that can cancel it. Matches show up in
+ * the viewer as each stream set is done, and are added to the probes on the
+ * Swing thread like the rest of the changes to the nodes.
+ *
+ * @author pcbje
+ */
+public class MatchSearch implements Runnable, Cancellable, SdbfSet.SearchListener {
+
+    private static final ExecutorService searches = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ahbm-search");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final SdbfSet sdbfSet;
+    private final Map<String, Matchable> probes;
+    private final Runnable whenDone;
+    private final ProgressHandle progress;
+    private volatile Future<?> future;
+    private final AtomicInteger done = new AtomicInteger();
+
+    MatchSearch(SdbfSet sdbfSet, Map<String, Matchable> probes, Runnable whenDone) {
+        this.sdbfSet = sdbfSet;
+        this.probes = probes;
+        this.whenDone = whenDone;
+        this.progress = ProgressHandleFactory.createHandle("AHBM matching", this);
+    }
+
+    /**
+     * Starts searching for matches of the probes in the background.
+     *
+     * @param whenDone run on the Swing thread when the search has finished or
+     * was cancelled, may be null
+     */
+    public static Future<?> start(SdbfSet sdbfSet, Map<String, Matchable> probes, Runnable whenDone) {
+        MatchSearch search = new MatchSearch(sdbfSet, probes, whenDone);
+
+        search.future = searches.submit(search);
+
+        return search.future;
+    }
+
+    @Override
+    public void run() {
+        progress.start();
+
+        try {
+            sdbfSet.searchMatching(probes, this);
+        } catch (Exception ex) {
+            if (!Thread.currentThread().isInterrupted()) {
+                Exceptions.printStackTrace(ex);
+            }
+        } finally {
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    progress.finish();
+
+                    if (whenDone != null) {
+                        whenDone.run();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Interrupts the search, which kills the sdhash process it waits for.
+     */
+    @Override
+    public boolean cancel() {
+        Future<?> current = future;
+
+        return current != null && current.cancel(true);
+    }
+
+    @Override
+    public void searchStarted(int probes, int streamSets) {
+        progress.switchToDeterminate(probes + streamSets);
+    }
+
+    @Override
+    public void probeHashed(Matchable probe) {
+        progress.progress(String.format("Hashed %s", probe.getFilename()), done.incrementAndGet());
+    }
+
+    @Override
+    public void setCompared(File streamSet) {
+        progress.progress(String.format("Matched with %s", streamSet.getName()), done.incrementAndGet());
+    }
+
+    @Override
+    public void update(Runnable changes) {
+        EventQueue.invokeLater(changes);
+    }
+}
@@ -15,7 +15,6 @@ package com.pcbje.ahbm.matchable;
 
 import com.pcbje.ahbm.AhbmIngestModule;
 import com.pcbje.ahbm.SdbfSet;
-import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.HashMap;
@@ -45,11 +44,9 @@ import org.sleuthkit.datamodel.Content;
 public final class MatchSelected implements ActionListener {
 
     private MatchableHandler handler;
-    private SdbfSet sdbfSet;
 
     public MatchSelected() {
         handler = new MatchableHandler();
-        sdbfSet = new SdbfSet(AhbmIngestModule.getSettings());
     }
 
     @Override
@@ -78,17 +75,7 @@ public final class MatchSelected implements ActionListener {
             Exceptions.printStackTrace(ex);
         }
 
-        EventQueue.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-
-                try {
-                    sdbfSet.searchMatching(input);
-                } catch (Exception ex) {
-                    Exceptions.printStackTrace(ex);
-                }
-            }
-        });
+        MatchSearch.start(SdbfSet.getCaseSet(AhbmIngestModule.getSettings()), input, null);
     }
 
     private DataResultTopComponent getActiveTopComponent() {
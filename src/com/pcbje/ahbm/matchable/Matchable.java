@@ -15,14 +15,22 @@ package com.pcbje.ahbm.matchable;
 
 import com.pcbje.ahbm.AhbmIngestModule;
 import com.pcbje.ahbm.CaseWrapper;
+import com.pcbje.ahbm.ContentLookup;
+import com.pcbje.ahbm.Sdbf;
+import com.pcbje.ahbm.SdbfMatch;
 import com.pcbje.ahbm.SdbfSet;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.openide.util.Exceptions;
 import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.TskCoreException;
@@ -38,19 +46,25 @@ public class Matchable {
     public static final String CHILDREN_TYPE = "CHILDREN_TYPE";
     private transient final PropertyChangeSupport propertyChangeSupport = new PropertyChangeSupport(this);
     private List<Matchable> children;
+    private final Map<String, Integer> childNames = new HashMap<>();
     private Matchable parent;
     private String filename;
     private Content content;
     private String similarityToParent;
     private static CaseWrapper caseWrapper;
+    private static ContentLookup contentLookup;
     private static SdbfSet sdbfSet;
     private File referenceSet;
     private boolean completed;
     private boolean expanded;
+    private long offset = -1;
+    private long parentOffset = -1;
+    private String identifier;
+    private volatile MatchableIndex index;
 
     static {
         caseWrapper = new CaseWrapper(AhbmIngestModule.getSettings());
-        sdbfSet = new SdbfSet(AhbmIngestModule.getSettings());
+        contentLookup = new ContentLookup(caseWrapper, ContentLookup.DEFAULT_CAPACITY);
     }
 
     public Matchable(String filename, Content content) {
@@ -71,8 +85,27 @@ public class Matchable {
         sdbfSet = _sdbfSet;
     }
 
+    /**
+     * @return the set given with setSdbfSet, or else the set shared by the
+     * searches of the open case
+     */
+    private static SdbfSet getSdbfSet() {
+        SdbfSet set = sdbfSet;
+
+        return set != null ? set : SdbfSet.getCaseSet(AhbmIngestModule.getSettings());
+    }
+
     public static void setCaseWrapper(CaseWrapper _caseWrapper) {
         caseWrapper = _caseWrapper;
+        contentLookup = new ContentLookup(_caseWrapper, ContentLookup.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Forgets the content looked up for earlier results, for instance when
+     * a new job starts on another case.
+     */
+    public static void clearContentCache() {
+        contentLookup.clear();
     }
 
     public String getFilename() {
@@ -126,17 +159,54 @@ public class Matchable {
         return null;
     }
 
+    /**
+     * @return the byte offset in the content of the matching segment, or of
+     * the best matching block when block mode digests are compared in
+     * process, or -1 if the whole content matched
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the byte offset of the segment or block of the parent that this
+     * matched, or -1 if the whole parent matched
+     */
+    public long getParentOffset() {
+        return parentOffset;
+    }
+
     public Content getContent() {
         return content;
     }
 
     public void addChild(final Matchable child) {
+        addChildren(Collections.singletonList(child));
+    }
+
+    /**
+     * Adds several children with one CHILDREN_TYPE and one ADD_CHILD event,
+     * so that listeners rebuild the node once instead of once per child.
+     */
+    public void addChildren(Collection<Matchable> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+
         boolean oldType = hasChildren();
         int oldCount = getChildren().size();
+        MatchableIndex current = index;
+
+        for (Matchable child : added) {
+            children.add(child);
+            countChildName(child.getFilename(), 1);
 
-        children.add(child);
+            child.setParent(this);
 
-        child.setParent(this);
+            if (current != null) {
+                current.addTree(child);
+            }
+        }
 
         propertyChangeSupport.firePropertyChange(CHILDREN_TYPE, oldType, hasChildren());
         propertyChangeSupport.firePropertyChange(ADD_CHILD, oldCount, getChildren().size());
@@ -151,7 +221,7 @@ public class Matchable {
         input.put(Long.toString(content.getId()), this);
 
         try {
-            sdbfSet.searchMatching(input);
+            getSdbfSet().searchMatching(input);
         } catch (Exception ex) {
             Exceptions.printStackTrace(ex);
         }
@@ -171,68 +241,128 @@ public class Matchable {
         propertyChangeSupport.addPropertyChangeListener(listener);
     }
 
-    public static void fromSdhashResults(Map<String, Matchable> input, String results) throws TskCoreException {
-        if (results.trim().length() == 0) {
-            return;
+    public static void fromSdhashResults(Map<String, Matchable> input, List<SdbfMatch> results) throws TskCoreException {
+        addMatches(getMatches(input, results));
+    }
+
+    /**
+     * Makes the children for the results without adding them to the probes,
+     * so that the matched contents can be looked up on a background thread
+     * and the children added on the Swing thread.
+     *
+     * @return the new children of each probe
+     */
+    public static Map<Matchable, List<Matchable>> getMatches(Map<String, Matchable> input, List<SdbfMatch> results) throws TskCoreException {
+        Map<Matchable, List<Matchable>> added = new LinkedHashMap<>();
+
+        if (results.isEmpty()) {
+            return added;
         }
 
-        String[] lines = fastSplit(results.trim(), '\n');
-        String[] parts;
-        Content matchedContent;
+        List<Long> ids = new ArrayList<>(results.size());
 
-        Matchable matchable;
+        for (SdbfMatch result : results) {
+            Long id = parseId(Sdbf.getBaseName(result.getMatch()));
+
+            if (id != null) {
+                ids.add(id);
+            }
+        }
 
-        for (String line : lines) {
-            parts = fastSplit(line, '|');
+        Map<Long, Content> contents;
 
-            matchedContent = lookupFile(parts[1]);
+        try {
+            contents = contentLookup.lookup(ids);
+        } catch (TskCoreException ex) {
+            Exceptions.printStackTrace(ex);
+            contents = new HashMap<>();
+        }
+
+        Content matchedContent;
+        Matchable matchable;
+        Matchable parent;
+        String name;
+        long offset;
+
+        for (SdbfMatch result : results) {
+            name = result.getMatch();
+            offset = getOffset(name, result.getMatchOffset());
+            matchedContent = contents.get(parseId(Sdbf.getBaseName(name)));
 
             if (matchedContent != null) {
-                parts[1] = matchedContent.getName();
+                name = matchedContent.getName();
+            } else if (offset >= 0) {
+                name = Sdbf.getBaseName(name);
+            }
+
+            if (offset >= 0) {
+                name = String.format("%s (offset %d)", name, offset);
+            }
+
+            matchable = new Matchable(name, matchedContent, String.format("%03d", result.getScore()));
+
+            matchable.setReferenceSet(result.getReferenceSet());
+            matchable.offset = offset;
+            matchable.parentOffset = getOffset(result.getProbe(), result.getProbeOffset());
+
+            if (input.containsKey(result.getProbe())) {
+                parent = input.get(result.getProbe());
+            } else {
+                parent = input.get(Sdbf.getBaseName(result.getProbe()));
             }
 
-            matchable = new Matchable(parts[1], matchedContent, parts[2]);
+            if (!added.containsKey(parent)) {
+                added.put(parent, new ArrayList<Matchable>());
+            }
+
+            added.get(parent).add(matchable);
+        }
 
-            matchable.setReferenceSet(new File(parts[3]));
+        return added;
+    }
 
-            input.get(parts[0]).addChild(matchable);
+    public static void addMatches(Map<Matchable, List<Matchable>> matches) {
+        for (Map.Entry<Matchable, List<Matchable>> children : matches.entrySet()) {
+            children.getKey().addChildren(children.getValue());
         }
     }
 
-    private static String[] fastSplit(String line, char split) {
-        String[] temp = new String[line.length() / 2];
-        int wordCount = 0;
-        int i = 0;
-        int j = line.indexOf(split);
-        while (j >= 0) {
-            temp[wordCount++] = line.substring(i, j);
-            i = j + 1;
-            j = line.indexOf(split, i);
+    /**
+     * @return the offset of the segment plus the offset of the best matching
+     * block within it, or -1 if the digest covers the whole file and matched
+     * from its start
+     */
+    private static long getOffset(String name, long blockOffset) {
+        long offset = Sdbf.getSegmentOffset(name);
+
+        if (blockOffset > 0) {
+            offset = Math.max(offset, 0) + blockOffset;
         }
-        temp[wordCount++] = line.substring(i);
-        String[] result = new String[wordCount];
-        System.arraycopy(temp, 0, result, 0, wordCount);
-        return result;
+
+        return offset;
     }
 
-    private static Content lookupFile(String potentialFileId) {
+    private static Long parseId(String potentialFileId) {
         try {
-            return caseWrapper.getContentById(Long.parseLong(potentialFileId));
+            return Long.parseLong(potentialFileId);
         } catch (NumberFormatException nfe) {
-        } catch (TskCoreException ex) {
-            Exceptions.printStackTrace(ex);
+            return null;
         }
-        return null;
     }
 
     boolean hasChild(Matchable childProbe) {
-        for (Matchable child : children) {
-            if (child.getFilename().equals(childProbe.getFilename())) {
-                return true;
-            }
-        }
+        return childNames.containsKey(childProbe.getFilename());
+    }
 
-        return false;
+    private void countChildName(String name, int delta) {
+        Integer count = childNames.get(name);
+        int updated = (count != null ? count : 0) + delta;
+
+        if (updated > 0) {
+            childNames.put(name, updated);
+        } else {
+            childNames.remove(name);
+        }
     }
 
     public void setParent(Matchable parent) {
@@ -243,22 +373,40 @@ public class Matchable {
         return parent;
     }
 
+    /**
+     * @param index the index that children added to this matchable, and their
+     * children, are added to
+     */
+    void setIndex(MatchableIndex index) {
+        this.index = index;
+    }
+
     public boolean isParentFor(Matchable probe) throws TskCoreException {
-        if (probe.getIdentfier().equals(getIdentfier())) {
-            return true;
-        }
+        return isParentFor(probe, probe.getAncestorNames());
+    }
 
-        Matchable currentParent = probe.getParent();
+    /**
+     * Same as isParentFor(probe), with the ancestor names of the probe
+     * computed once by the caller, so that checking every child of a node is
+     * linear in the number of children.
+     */
+    public boolean isParentFor(Matchable probe, Set<String> probeAncestorNames) throws TskCoreException {
+        return probeAncestorNames.contains(filename) || probe.getIdentfier().equals(getIdentfier());
+    }
 
-        while (currentParent != null) {
-            if (currentParent.getFilename().equals(filename)) {
-                return true;
-            }
+    /**
+     * @return the file names of the parent, its parent and so on
+     */
+    public Set<String> getAncestorNames() {
+        Set<String> names = new HashSet<>();
+        Matchable currentParent = parent;
 
+        while (currentParent != null) {
+            names.add(currentParent.getFilename());
             currentParent = currentParent.getParent();
         }
 
-        return false;
+        return names;
     }
 
     private void setReferenceSet(File referenceSet) {
@@ -286,12 +434,10 @@ public class Matchable {
     }
 
     public String getUniqueIdentifier() {
-        if (content != null) {
-            try {
-                return content.getUniquePath();
-            } catch (TskCoreException ex) {
-                Exceptions.printStackTrace(ex);
-            }
+        try {
+            return getIdentfier();
+        } catch (TskCoreException ex) {
+            Exceptions.printStackTrace(ex);
         }
 
         return filename;
@@ -305,19 +451,31 @@ public class Matchable {
         propertyChangeSupport.firePropertyChange(NEW_STATUS, old, expanded);
     }
 
+    /**
+     * @return the unique path of the content, which is looked up once, or the
+     * file name if there is no content
+     */
     private String getIdentfier() throws TskCoreException {
-        if (content != null) {
-            return content.getUniquePath();
-        } else {
-            return filename;
+        if (identifier == null) {
+            identifier = content != null ? content.getUniquePath() : filename;
         }
+
+        return identifier;
     }
 
     void removeChild(Matchable child) {
         boolean oldType = hasChildren();
         int oldCount = getChildren().size();
 
-        children.remove(child);
+        if (children.remove(child)) {
+            countChildName(child.getFilename(), -1);
+
+            MatchableIndex current = index;
+
+            if (current != null) {
+                current.removeTree(child);
+            }
+        }
 
         propertyChangeSupport.firePropertyChange(CHILDREN_TYPE, oldType, hasChildren());
         propertyChangeSupport.firePropertyChange(ADD_CHILD, oldCount, getChildren().size());
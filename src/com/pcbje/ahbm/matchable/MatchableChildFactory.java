@@ -16,6 +16,12 @@ package com.pcbje.ahbm.matchable;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.openide.nodes.ChildFactory;
 import org.openide.nodes.Children;
 import org.openide.nodes.Node;
@@ -29,7 +35,21 @@ import org.sleuthkit.datamodel.TskCoreException;
  */
 public class MatchableChildFactory extends ChildFactory<Matchable> implements PropertyChangeListener {
 
+    /**
+     * Children added within this many milliseconds of each other are shown
+     * with a single refresh, about one frame at 60 Hz.
+     */
+    static final int REFRESH_DELAY = 16;
+    private static final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ahbm-viewer-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
     private final Matchable key;
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
 
     public MatchableChildFactory(Matchable key) {
         this.key = key;
@@ -44,10 +64,11 @@ public class MatchableChildFactory extends ChildFactory<Matchable> implements Pr
         key.findChildren();
 
         List<Matchable> children = key.getChildren();
+        Set<String> ancestorNames = key.getAncestorNames();
 
         for (int i = 0; i < children.size(); i++) {
             try {
-                if (!children.get(i).isParentFor(key)) {
+                if (!children.get(i).isParentFor(key, ancestorNames)) {
                     toPopulate.add(children.get(i));
                 }
             } catch (TskCoreException ex) {
@@ -71,8 +92,14 @@ public class MatchableChildFactory extends ChildFactory<Matchable> implements Pr
 
     @Override
     public void propertyChange(PropertyChangeEvent evt) {
-        if (Matchable.ADD_CHILD.equals(evt.getPropertyName())) {
-            refresh(true);
+        if (Matchable.ADD_CHILD.equals(evt.getPropertyName()) && refreshPending.compareAndSet(false, true)) {
+            refresher.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    refreshPending.set(false);
+                    refresh(true);
+                }
+            }, REFRESH_DELAY, TimeUnit.MILLISECONDS);
         }
     }
 }
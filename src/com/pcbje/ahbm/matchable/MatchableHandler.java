@@ -15,11 +15,8 @@ package com.pcbje.ahbm.matchable;
 
 import com.pcbje.ahbm.AhbmIngestModule;
 import com.pcbje.ahbm.CaseWrapper;
-import java.awt.EventQueue;
-import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
 import java.util.Iterator;
-import org.openide.util.Exceptions;
 import org.openide.windows.WindowManager;
 import org.sleuthkit.datamodel.TskCoreException;
 
@@ -31,41 +28,37 @@ public class MatchableHandler {
 
     private CaseWrapper caseWrapper;
     private MatchableViewer drawer;
+    private static MatchablePublisher publisher;
 
     public MatchableHandler() {
         caseWrapper = new CaseWrapper(AhbmIngestModule.getSettings());
         drawer = (MatchableViewer) WindowManager.getDefault().findTopComponent("MatchViewer");
     }
 
-    public void handleStreamMatches(final Collection<Matchable> matchables) throws InterruptedException, InvocationTargetException {
-        EventQueue.invokeAndWait(new Runnable() {
-            @Override
-            public void run() {
-                Iterator<Matchable> itr = matchables.iterator();
+    /**
+     * Queues the probes that have matches for the viewer and returns without
+     * waiting for the Swing thread.
+     */
+    public void handleStreamMatches(Collection<Matchable> matchables) {
+        MatchablePublisher current = getPublisher(drawer, caseWrapper);
 
-                Matchable probe;
-
-                while (itr.hasNext()) {
-                    probe = itr.next();
-
-                    if (probe.hasChildren()) {
-                        drawer.addNode(probe);
-
-                        if (!drawer.isOpened()) {
-                            drawer.open();
+        for (Matchable probe : matchables) {
+            if (probe.hasChildren()) {
+                current.publish(probe);
+            }
+        }
+    }
 
-                            drawer.requestActive();
-                        }
+    /**
+     * @return the publisher that all handlers share, so that the hits of every
+     * ingest thread are summarized together
+     */
+    private static synchronized MatchablePublisher getPublisher(MatchableViewer drawer, CaseWrapper caseWrapper) {
+        if (publisher == null) {
+            publisher = new MatchablePublisher(drawer, caseWrapper);
+        }
 
-                        try {
-                            caseWrapper.addMatchNotice(probe);
-                        } catch (TskCoreException ex) {
-                            Exceptions.printStackTrace(ex);
-                        }
-                    }
-                }
-            }
-        });
+        return publisher;
     }
 
     public void handleSearchMatches(Collection<Matchable> matchables) throws TskCoreException {
@@ -0,0 +1,128 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm.matchable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every matchable in a tree, keyed by the object ID of its content or, for
+ * matches in reference sets, by its file name. Matchables are added and
+ * removed with their subtree when they are attached to or detached from a
+ * tree that has an index (see Matchable.setIndex).
+ *
+ * @author pcbje
+ */
+public class MatchableIndex {
+
+    private final ConcurrentHashMap<Object, Set<Matchable>> matchables = new ConcurrentHashMap<>();
+
+    /**
+     * @return the key that matchables of the same file share
+     */
+    static Object getKey(Matchable matchable) {
+        if (matchable.getContent() != null) {
+            return matchable.getContent().getId();
+        }
+
+        return matchable.getFilename();
+    }
+
+    void addTree(Matchable root) {
+        root.setIndex(this);
+
+        add(root);
+
+        for (Matchable child : new ArrayList<>(root.getChildren())) {
+            addTree(child);
+        }
+    }
+
+    void removeTree(Matchable root) {
+        root.setIndex(null);
+
+        remove(root);
+
+        for (Matchable child : new ArrayList<>(root.getChildren())) {
+            removeTree(child);
+        }
+    }
+
+    private void add(Matchable matchable) {
+        Object key = getKey(matchable);
+
+        while (true) {
+            Set<Matchable> same = matchables.get(key);
+
+            if (same == null) {
+                same = Collections.newSetFromMap(new ConcurrentHashMap<Matchable, Boolean>());
+
+                Set<Matchable> existing = matchables.putIfAbsent(key, same);
+
+                if (existing != null) {
+                    same = existing;
+                }
+            }
+
+            same.add(matchable);
+
+            if (matchables.get(key) == same) {
+                return;
+            }
+        }
+    }
+
+    private void remove(Matchable matchable) {
+        Object key = getKey(matchable);
+        Set<Matchable> same = matchables.get(key);
+
+        if (same != null) {
+            same.remove(matchable);
+
+            if (same.isEmpty()) {
+                matchables.remove(key, same);
+            }
+        }
+    }
+
+    public boolean contains(Matchable matchable) {
+        Set<Matchable> same = matchables.get(getKey(matchable));
+
+        return same != null && same.contains(matchable);
+    }
+
+    /**
+     * @return every matchable of the same file, including the given one if it
+     * is in the tree
+     */
+    public Collection<Matchable> getOccurrences(Matchable matchable) {
+        Set<Matchable> same = matchables.get(getKey(matchable));
+
+        if (same == null) {
+            return Collections.emptyList();
+        }
+
+        return new ArrayList<>(same);
+    }
+
+    /**
+     * @return the number of distinct files in the tree
+     */
+    public int size() {
+        return matchables.size();
+    }
+}
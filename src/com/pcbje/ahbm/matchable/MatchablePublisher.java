@@ -0,0 +1,124 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm.matchable;
+
+import com.pcbje.ahbm.CaseWrapper;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.Timer;
+import org.openide.util.Exceptions;
+
+/**
+ * Hands probes with matches from the ingest threads to the viewer without
+ * waiting for the Swing thread. Probes are queued and added to the viewer in
+ * batches by a timer on the Swing thread, and the ingest inbox gets one
+ * summary of the new hits per notice interval instead of a message per file.
+ *
+ * @author pcbje
+ */
+public class MatchablePublisher {
+
+    static final int PUBLISH_INTERVAL = 100;
+    static final int NOTICE_INTERVAL = 10000;
+    private final ConcurrentLinkedQueue<Matchable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final MatchableViewer drawer;
+    private final CaseWrapper caseWrapper;
+    private final Timer timer;
+    private final int noticeInterval;
+    private int newHits;
+    private long noticeStart;
+
+    public MatchablePublisher(MatchableViewer drawer, CaseWrapper caseWrapper) {
+        this(drawer, caseWrapper, PUBLISH_INTERVAL, NOTICE_INTERVAL);
+    }
+
+    MatchablePublisher(MatchableViewer drawer, CaseWrapper caseWrapper, int publishInterval, int noticeInterval) {
+        this.drawer = drawer;
+        this.caseWrapper = caseWrapper;
+        this.noticeInterval = noticeInterval;
+        this.timer = new Timer(publishInterval, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                drain();
+            }
+        });
+    }
+
+    /**
+     * Queues a probe for the viewer. Safe to call from any thread, and never
+     * waits for the Swing thread.
+     */
+    public void publish(Matchable probe) {
+        queue.offer(probe);
+
+        if (running.compareAndSet(false, true)) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Adds the queued probes to the viewer and posts the summary of new hits
+     * when the notice interval has passed. Stops the timer when there is
+     * nothing left to do. Runs on the Swing thread.
+     */
+    void drain() {
+        List<Matchable> batch = new ArrayList<>();
+        Matchable probe;
+
+        while ((probe = queue.poll()) != null) {
+            batch.add(probe);
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (!batch.isEmpty()) {
+            drawer.addNodes(batch);
+
+            if (!drawer.isOpened()) {
+                drawer.open();
+                drawer.requestActive();
+            }
+
+            if (newHits == 0) {
+                noticeStart = now;
+            }
+
+            newHits += batch.size();
+        }
+
+        if (newHits > 0 && now - noticeStart >= noticeInterval) {
+            try {
+                caseWrapper.addInfoMessage(String.format("%d new AHBM hit%s in last %ds", newHits, newHits != 1 ? "s" : "", (now - noticeStart) / 1000));
+            } catch (RuntimeException ex) {
+                Exceptions.printStackTrace(ex);
+            }
+
+            newHits = 0;
+        }
+
+        if (queue.isEmpty() && newHits == 0) {
+            timer.stop();
+            running.set(false);
+
+            if (!queue.isEmpty() && running.compareAndSet(false, true)) {
+                timer.start();
+            }
+        }
+    }
+}
@@ -16,8 +16,8 @@ package com.pcbje.ahbm.matchable;
 import com.pcbje.ahbm.AhbmIngestModule;
 import com.pcbje.ahbm.SdbfSet;
 import java.awt.BorderLayout;
-import java.awt.EventQueue;
 import java.beans.IntrospectionException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TooManyListenersException;
@@ -27,7 +27,6 @@ import org.openide.awt.ActionReference;
 import org.openide.explorer.ExplorerManager;
 import org.openide.explorer.ExplorerUtils;
 import org.openide.nodes.Node;
-import org.openide.util.Exceptions;
 import org.openide.windows.TopComponent;
 import org.openide.util.NbBundle.Messages;
 import org.sleuthkit.datamodel.TskCoreException;
@@ -54,12 +53,15 @@ public final class MatchableViewer extends TopComponent implements ExplorerManag
 
     private final ExplorerManager mgr = new ExplorerManager();
     private Matchable rootNode = new Matchable("", null);
+    private final MatchableIndex index = new MatchableIndex();
     private final MatchableOutlineView view;
 
     public MatchableViewer() throws IntrospectionException, InterruptedException, TskCoreException, TooManyListenersException {
         initComponents();
         setName("AHBM Viewer");
 
+        rootNode.setIndex(index);
+
         view = new MatchableOutlineView(mgr);
         view.getOutline().setRootVisible(false);
         view.addPropertyColumn("parentName", "Matched with");
@@ -88,25 +90,22 @@ public final class MatchableViewer extends TopComponent implements ExplorerManag
         rootNode.addChild(child);
     }
 
-    public Matchable getExistingNode(Matchable probe) {
-        return recursiveGetExistingNode(probe, rootNode);
+    public void addNodes(Collection<Matchable> children) {
+        rootNode.addChildren(children);
     }
 
-    private Matchable recursiveGetExistingNode(Matchable probe, Matchable parent) {
-        Matchable existingNode = null;
-        for (Matchable child : parent.getChildren()) {
-            if (child == probe) {
-                return child;
-            }
-
-            existingNode = recursiveGetExistingNode(probe, child);
-
-            if (existingNode != null) {
-                return existingNode;
-            }
-        }
+    /**
+     * @return the probe if it is in the tree, or null
+     */
+    public Matchable getExistingNode(Matchable probe) {
+        return index.contains(probe) ? probe : null;
+    }
 
-        return existingNode;
+    /**
+     * @return every node of the same file as the given one
+     */
+    public Collection<Matchable> getOccurrences(Matchable matchable) {
+        return index.getOccurrences(matchable);
     }
 
     /**
@@ -161,10 +160,11 @@ public final class MatchableViewer extends TopComponent implements ExplorerManag
     }
 
     void expandSelectedNodes() {
+        final Node[] selected = mgr.getSelectedNodes();
         final Map<String, Matchable> matchables = new HashMap<>();
         Matchable matchable;
 
-        for (Node node : mgr.getSelectedNodes()) {
+        for (Node node : selected) {
             matchable = node.getLookup().lookup(Matchable.class);
 
             if (matchable.getContent() != null) {
@@ -176,17 +176,11 @@ public final class MatchableViewer extends TopComponent implements ExplorerManag
             }
         }
 
-        EventQueue.invokeLater(new Runnable() {
+        MatchSearch.start(SdbfSet.getCaseSet(AhbmIngestModule.getSettings()), matchables, new Runnable() {
             @Override
             public void run() {
-                try {
-                    new SdbfSet(AhbmIngestModule.getSettings()).searchMatching(matchables);
-
-                    for (Node node : mgr.getSelectedNodes()) {
-                        view.expandNode(node);
-                    }
-                } catch (Exception ex) {
-                    Exceptions.printStackTrace(ex);
+                for (Node node : selected) {
+                    view.expandNode(node);
                 }
             }
         });
@@ -0,0 +1,310 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import com.pcbje.ahbm.matchable.Matchable;
+import com.pcbje.ahbm.matchable.MatchableHandler;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sleuthkit.autopsy.ingest.IngestModule.ProcessResult;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ *
+ * @author pcbje
+ */
+public class AhbmIngestModuleStressTest {
+
+    private static final int FILE_COUNT = 96;
+
+    @Test
+    public void testSixteenPipelinesMatchLikeOne() throws Exception {
+        Map<Long, byte[]> data = createFiles();
+
+        Map<String, String> single = ingest(data, 1, 0);
+        Map<String, String> parallel = ingest(data, 16, 0);
+
+        assertEquals(FILE_COUNT, single.size());
+        assertEquals(single, parallel);
+        assertTrue(single.containsValue("ipsumlorem:100,loremipsum:087"));
+    }
+
+    @Test
+    public void testAsyncPipelinesMatchLikeOneThread() throws Exception {
+        Map<Long, byte[]> data = createFiles();
+
+        assertEquals(ingest(data, 1, 0), ingest(data, 4, 4));
+    }
+
+    /**
+     * With againstExisting, which files match each other depends on the
+     * order they are ingested in, since a file is only matched with the files
+     * that are in the open case before it. So only the properties that hold in
+     * any order are checked: every digest is in the open case once, every
+     * match with the open case has the score of the two digests, and every
+     * pair of files that match in both directions is found at least once.
+     */
+    @Test
+    public void testSixteenPipelinesMatchTheOpenCase() throws Exception {
+        Map<Long, byte[]> data = createFiles();
+        File moduleDir = Files.createTempDirectory("ahbm-stress").toFile();
+
+        Map<String, String> matches = ingest(data, 16, 0, true, moduleDir);
+
+        assertEquals(FILE_COUNT, matches.size());
+
+        Map<String, Sdbf> digests = new HashMap<>();
+
+        for (Sdbf sdbf : Sdbf.parseFile(new File(moduleDir, SdbfSet.DEFAULT_OPEN_CASE_SET))) {
+            assertNull("Digest added twice: " + sdbf.getName(), digests.put(sdbf.getName(), sdbf));
+        }
+
+        assertEquals(data.keySet().size(), digests.size());
+
+        Set<String> found = new HashSet<>();
+
+        for (long id : data.keySet()) {
+            for (String child : matches.get("file-" + id).split(",")) {
+                String[] nameAndScore = child.split(":");
+
+                if (!digests.containsKey(nameAndScore[0])) {
+                    continue;
+                }
+
+                int score = SdbfComparator.score(digests.get(Long.toString(id)), digests.get(nameAndScore[0]));
+
+                assertEquals(String.format("%03d", score), nameAndScore[1]);
+                found.add(id + ">" + nameAndScore[0]);
+            }
+        }
+
+        int pairs = 0;
+
+        for (long a : data.keySet()) {
+            for (long b : data.keySet()) {
+                Sdbf first = digests.get(Long.toString(a));
+                Sdbf second = digests.get(Long.toString(b));
+
+                if (a < b && SdbfComparator.score(first, second) >= 1 && SdbfComparator.score(second, first) >= 1) {
+                    pairs++;
+                    assertTrue(String.format("%d and %d did not match", a, b), found.contains(a + ">" + b) || found.contains(b + ">" + a));
+                }
+            }
+        }
+
+        assertTrue(pairs > 0);
+    }
+
+    private Map<String, String> ingest(Map<Long, byte[]> data, int threads, int pipelineThreads) throws Exception {
+        return ingest(data, threads, pipelineThreads, false, Files.createTempDirectory("ahbm-stress").toFile());
+    }
+
+    private Map<String, String> ingest(Map<Long, byte[]> data, int threads, int pipelineThreads, boolean againstExisting, File moduleDir) throws Exception {
+
+        File streamSets = new File(moduleDir, SdbfSet.DEFAULT_STREAM_SET);
+        FileWriter writer = new FileWriter(streamSets);
+        writer.write(getResource("loremlorem.sdbf").getAbsolutePath());
+        writer.write("\n");
+        writer.close();
+
+        final AhbmJobSettings settings = new AhbmJobSettings(againstExisting, false, 0, 1024);
+        settings.setPipelineThreads(pipelineThreads);
+        settings.setPipelineQueueSize(4);
+        final CaseWrapper caseWrapper = new FakeCaseWrapper(settings, moduleDir, data);
+        Matchable.setCaseWrapper(caseWrapper);
+        final Map<String, String> matches = new ConcurrentHashMap<>();
+        final ConcurrentLinkedQueue<AbstractFile> queue = new ConcurrentLinkedQueue<>();
+
+        for (long id : data.keySet()) {
+            queue.add(getFile(id, data.get(id)));
+        }
+
+        final MatchableHandler matchHandler = mock(MatchableHandler.class);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                for (Matchable probe : (Collection<Matchable>) invocation.getArguments()[0]) {
+                    List<String> children = new ArrayList<>();
+
+                    for (Matchable child : probe.getChildren()) {
+                        children.add(child.getFilename() + ":" + child.getParentSimilarity());
+                    }
+
+                    Collections.sort(children);
+
+                    StringBuilder joined = new StringBuilder();
+
+                    for (String child : children) {
+                        joined.append(joined.length() > 0 ? "," : "").append(child);
+                    }
+
+                    assertNull(matches.put(probe.getFilename(), joined.toString()));
+                }
+
+                return null;
+            }
+        }).when(matchHandler).handleStreamMatches(any(Collection.class));
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> pipelines = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            pipelines.add(executor.submit(new java.util.concurrent.Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    AhbmIngestModule module = new AhbmIngestModule(settings);
+                    module.setCaseWrapper(caseWrapper);
+                    module.setMatchHandler(matchHandler);
+
+                    Sdhash sdhash = new Sdhash(settings);
+                    sdhash.setCaseWrapper(caseWrapper);
+                    module.setSdhash(sdhash);
+
+                    module.startUp(null);
+
+                    start.await();
+
+                    AbstractFile file;
+
+                    while ((file = queue.poll()) != null) {
+                        assertEquals(ProcessResult.OK, module.process(file));
+                    }
+
+                    module.shutDown();
+
+                    return null;
+                }
+            }));
+        }
+
+        start.countDown();
+
+        for (Future<Void> pipeline : pipelines) {
+            pipeline.get(60, TimeUnit.SECONDS);
+        }
+
+        executor.shutdown();
+
+        List<Sdbf> openCase = Sdbf.parseFile(new File(moduleDir, SdbfSet.DEFAULT_OPEN_CASE_SET));
+
+        assertEquals(FILE_COUNT, openCase.size());
+
+        return new TreeMap<>(matches);
+    }
+
+    /**
+     * Copies of ipsumlorem.txt with an increasing part of the text replaced
+     * by random bytes, so that the scores against loremlorem.sdbf vary.
+     */
+    private Map<Long, byte[]> createFiles() throws IOException {
+        byte[] original = Files.readAllBytes(getResource("ipsumlorem.txt").toPath());
+        Map<Long, byte[]> data = new TreeMap<>();
+        Random random = new Random(42);
+
+        for (long id = 1; id <= FILE_COUNT; id++) {
+            byte[] copy = original.clone();
+            int noise = (int) (copy.length * (id - 1) / FILE_COUNT);
+
+            for (int i = 0; i < noise; i++) {
+                copy[i] = (byte) random.nextInt(256);
+            }
+
+            data.put(id, copy);
+        }
+
+        return data;
+    }
+
+    private AbstractFile getFile(long id, byte[] data) {
+        AbstractFile file = mock(AbstractFile.class);
+        when(file.isFile()).thenReturn(Boolean.TRUE);
+        when(file.getKnown()).thenReturn(TskData.FileKnown.UNKNOWN);
+        when(file.getId()).thenReturn(id);
+        when(file.getName()).thenReturn("file-" + id);
+        when(file.getSize()).thenReturn((long) data.length);
+        return file;
+    }
+
+    private File getResource(String name) {
+        return new File(getClass().getClassLoader().getResource(name).getPath());
+    }
+
+    private static class FakeCaseWrapper extends CaseWrapper {
+
+        private final File moduleDir;
+        private final Map<Long, byte[]> data;
+
+        FakeCaseWrapper(AhbmJobSettings settings, File moduleDir, Map<Long, byte[]> data) {
+            super(settings);
+            this.moduleDir = moduleDir;
+            this.data = data;
+        }
+
+        @Override
+        public File getFileInModuleDir(String pathRelativeToModule) {
+            File file = new File(moduleDir, pathRelativeToModule);
+            file.getParentFile().mkdirs();
+
+            return file;
+        }
+
+        @Override
+        public Content getContentById(long objId) {
+            return null;
+        }
+
+        @Override
+        public Map<Long, Content> getContentsById(Collection<Long> objIds) {
+            return new HashMap<>();
+        }
+
+        @Override
+        public void readFile(OutputStream out, int bufferSize, Content content) {
+            try {
+                out.write(data.get(content.getId()));
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+}
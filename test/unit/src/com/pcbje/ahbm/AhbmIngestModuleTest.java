@@ -18,6 +18,7 @@ import com.pcbje.ahbm.matchable.MatchableHandler;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Properties;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import static org.mockito.Mockito.*;
@@ -54,10 +55,16 @@ public class AhbmIngestModuleTest {
         ahbmIngestModule.setMatchHandler(matchHandler);
     }
 
+    @After
+    public void tearDown() {
+        ahbmIngestModule.shutDown();
+    }
+
     @Test
     public void testSdbfIsGenerated() throws IOException, TskCoreException {
         AbstractFile abstractFile = mock(AbstractFile.class);
         when(abstractFile.isFile()).thenReturn(Boolean.TRUE);
+        when(abstractFile.getSize()).thenReturn(1024L);
 
         ahbmIngestModule.startUp(null);
         ahbmIngestModule.process(abstractFile);
@@ -69,6 +76,7 @@ public class AhbmIngestModuleTest {
     public void testSdbfIsAddedToOpenCaseSet() throws IOException, TskCoreException {
         AbstractFile abstractFile = mock(AbstractFile.class);
         when(abstractFile.isFile()).thenReturn(Boolean.TRUE);
+        when(abstractFile.getSize()).thenReturn(1024L);
 
         ahbmIngestModule.startUp(null);
         ahbmIngestModule.process(abstractFile);
@@ -80,6 +88,7 @@ public class AhbmIngestModuleTest {
     public void testSdbfIsStreamMatched() throws IOException, TskCoreException {
         AbstractFile abstractFile = mock(AbstractFile.class);
         when(abstractFile.isFile()).thenReturn(Boolean.TRUE);
+        when(abstractFile.getSize()).thenReturn(1024L);
 
         ahbmIngestModule.startUp(null);
         ahbmIngestModule.process(abstractFile);
@@ -91,6 +100,7 @@ public class AhbmIngestModuleTest {
     public void testStreamMatchesAreHandeled() throws Exception {
         AbstractFile abstractFile = mock(AbstractFile.class);
         when(abstractFile.isFile()).thenReturn(Boolean.TRUE);
+        when(abstractFile.getSize()).thenReturn(1024L);
 
         ahbmIngestModule.startUp(null);
         ahbmIngestModule.process(abstractFile);
@@ -116,6 +126,7 @@ public class AhbmIngestModuleTest {
 
         when(abstractFile.getKnown()).thenReturn(TskData.FileKnown.KNOWN);
         when(abstractFile.isFile()).thenReturn(Boolean.TRUE);
+        when(abstractFile.getSize()).thenReturn(1024L);
 
         CaseWrapper caseWrapper = mock(CaseWrapper.class);
 
@@ -135,6 +146,7 @@ public class AhbmIngestModuleTest {
 
         when(abstractFile.getKnown()).thenReturn(TskData.FileKnown.UNKNOWN);
         when(abstractFile.isFile()).thenReturn(Boolean.TRUE);
+        when(abstractFile.getSize()).thenReturn(1024L);
 
         CaseWrapper caseWrapper = mock(CaseWrapper.class);
 
@@ -154,6 +166,7 @@ public class AhbmIngestModuleTest {
 
         when(abstractFile.getKnown()).thenReturn(TskData.FileKnown.KNOWN);
         when(abstractFile.isFile()).thenReturn(Boolean.TRUE);
+        when(abstractFile.getSize()).thenReturn(1024L);
 
         ahbmIngestModule.setSettings(new AhbmJobSettings(false, false, 0, 1024));
 
@@ -162,4 +175,89 @@ public class AhbmIngestModuleTest {
 
         verify(sdhash).generateSdbf(any(Matchable.class));
     }
+
+    @Test
+    public void testSmallFileIsSkippedAndReported() throws IOException, TskCoreException {
+        AbstractFile abstractFile = mock(AbstractFile.class);
+        when(abstractFile.isFile()).thenReturn(Boolean.TRUE);
+        when(abstractFile.getSize()).thenReturn(100L);
+
+        CaseWrapper caseWrapper = mock(CaseWrapper.class);
+        ahbmIngestModule.setCaseWrapper(caseWrapper);
+
+        ahbmIngestModule.startUp(null);
+        ahbmIngestModule.process(abstractFile);
+        ahbmIngestModule.shutDown();
+
+        verify(sdhash, never()).generateSdbf(any(Matchable.class));
+        verify(caseWrapper).addInfoMessage("Skipped 1 files: 1 smaller than 512 bytes");
+    }
+
+    @Test
+    public void testModulesOfAJobFillTheSameBatch() throws Exception {
+        AhbmJobSettings settings = new AhbmJobSettings(false, false, 0, 1024);
+        settings.setBatchSize(2);
+
+        ahbmIngestModule.setSettings(settings);
+
+        AhbmIngestModule other = new AhbmIngestModule(settings);
+        other.setSdhash(sdhash);
+        other.setSdbfSet(sdbfSet);
+        other.setMatchHandler(matchHandler);
+
+        ahbmIngestModule.startUp(null);
+        other.startUp(null);
+
+        ahbmIngestModule.process(getFile(1));
+        other.process(getFile(2));
+
+        verify(sdbfSet, times(1)).streamMatch(anyMap(), any(String.class));
+
+        other.shutDown();
+    }
+
+    @Test
+    public void testPipelineIsDrainedWhenJobEnds() throws Exception {
+        AhbmJobSettings settings = new AhbmJobSettings(false, false, 0, 1024);
+        settings.setPipelineThreads(2);
+
+        ahbmIngestModule.setSettings(settings);
+
+        ahbmIngestModule.startUp(null);
+        ahbmIngestModule.process(getFile(1));
+        ahbmIngestModule.shutDown();
+
+        verify(sdhash).generateSdbf(any(Matchable.class));
+        verify(sdbfSet).streamMatch(any(Content.class), any(String.class));
+        verify(matchHandler).handleStreamMatches(any(Collection.class));
+    }
+
+    @Test
+    public void testPipelineFailuresAreReported() throws Exception {
+        AhbmJobSettings settings = new AhbmJobSettings(false, false, 0, 1024);
+        settings.setPipelineThreads(2);
+
+        ahbmIngestModule.setSettings(settings);
+
+        CaseWrapper caseWrapper = mock(CaseWrapper.class);
+        ahbmIngestModule.setCaseWrapper(caseWrapper);
+
+        when(sdhash.generateSdbf(any(Matchable.class))).thenThrow(new IOException("Read error"));
+
+        ahbmIngestModule.startUp(null);
+        ahbmIngestModule.process(getFile(1));
+        ahbmIngestModule.process(getFile(2));
+        ahbmIngestModule.shutDown();
+
+        verify(caseWrapper).addErrorMessage("AHBM failed to hash or match 2 files, see the log for details");
+    }
+
+    private AbstractFile getFile(long id) {
+        AbstractFile abstractFile = mock(AbstractFile.class);
+        when(abstractFile.isFile()).thenReturn(Boolean.TRUE);
+        when(abstractFile.getId()).thenReturn(id);
+        when(abstractFile.getName()).thenReturn("file-" + id);
+        when(abstractFile.getSize()).thenReturn(1024L);
+        return abstractFile;
+    }
 }
@@ -0,0 +1,94 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author pcbje
+ */
+public class AhbmJobSettingsTest {
+
+    @Test
+    public void testOldSettingsGetTheDefaultsOfNewOptions() throws Exception {
+        AhbmJobSettings defaults = new AhbmJobSettings();
+        AhbmJobSettings old;
+
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("settings-v1.ser")) {
+            old = (AhbmJobSettings) new ObjectInputStream(in).readObject();
+        }
+
+        assertTrue(old.isAgainstExisting());
+        assertFalse(old.isSkipKnownGood());
+        assertEquals(32, old.getMaxFileSize());
+        assertEquals(4096, old.getReadBufferSize());
+
+        assertEquals(defaults.getEngine(), old.getEngine());
+        assertEquals(defaults.getSdhashTimeout(), old.getSdhashTimeout());
+        assertEquals(defaults.getBatchSize(), old.getBatchSize());
+        assertEquals(defaults.getBatchDelay(), old.getBatchDelay());
+        assertEquals(defaults.getPipelineThreads(), old.getPipelineThreads());
+        assertEquals(defaults.getPipelineQueueSize(), old.getPipelineQueueSize());
+        assertEquals(defaults.getCompareParallelism(), old.getCompareParallelism());
+        assertEquals(defaults.isCacheSdbfs(), old.isCacheSdbfs());
+        assertEquals(defaults.isStoreSdbfs(), old.isStoreSdbfs());
+        assertEquals(defaults.getMinFileSize(), old.getMinFileSize());
+        assertEquals(defaults.getSkipMimeTypes(), old.getSkipMimeTypes());
+        assertEquals(defaults.isSampleEntropy(), old.isSampleEntropy());
+        assertEquals(defaults.isBlockMode(), old.isBlockMode());
+        assertEquals(defaults.getBlockSegmentSize(), old.getBlockSegmentSize());
+        assertEquals(defaults.getPrefetchMemory(), old.getPrefetchMemory());
+        assertEquals(defaults.getMinScore(), old.getMinScore());
+        assertEquals(defaults.getMaxMatches(), old.getMaxMatches());
+        assertEquals(defaults.getReferenceSetLimits(), old.getReferenceSetLimits());
+        assertEquals(128, old.getPrefetchMemory());
+    }
+
+    @Test
+    public void testSettingsSurviveSerialization() throws Exception {
+        AhbmJobSettings settings = new AhbmJobSettings(true, false, 32, 4096);
+        settings.setEngine(AhbmJobSettings.Engine.SDHASH);
+        settings.setCacheSdbfs(false);
+        settings.setPrefetchMemory(0);
+        settings.setBlockMode(true);
+        settings.setReferenceSetLimits("nsrl.sdbf=20:10");
+
+        AhbmJobSettings copy = copy(settings);
+
+        assertEquals(AhbmJobSettings.Engine.SDHASH, copy.getEngine());
+        assertFalse(copy.isCacheSdbfs());
+        assertEquals(0, copy.getPrefetchMemory());
+        assertTrue(copy.isBlockMode());
+        assertEquals("nsrl.sdbf=20:10", copy.getReferenceSetLimits());
+        assertEquals(32, copy.getMaxFileSize());
+    }
+
+    private static AhbmJobSettings copy(AhbmJobSettings settings) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(settings);
+        }
+
+        return (AhbmJobSettings) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ *
+ * @author pcbje
+ */
+public class ContentLookupTest {
+
+    private CaseWrapper caseWrapper;
+
+    @Before
+    public void setUp() throws Exception {
+        caseWrapper = mock(CaseWrapper.class);
+
+        when(caseWrapper.getContentsById(anyCollectionOf(Long.class))).thenAnswer(new Answer<Map<Long, Content>>() {
+            @Override
+            public Map<Long, Content> answer(InvocationOnMock invocation) throws Throwable {
+                Map<Long, Content> result = new HashMap<>();
+
+                for (Object id : (Collection<?>) invocation.getArguments()[0]) {
+                    if ((Long) id >= 0) {
+                        result.put((Long) id, mock(Content.class));
+                    }
+                }
+
+                return result;
+            }
+        });
+    }
+
+    @Test
+    public void testIdsAreLookedUpInBatches() throws Exception {
+        ContentLookup lookup = new ContentLookup(caseWrapper, ContentLookup.DEFAULT_CAPACITY);
+
+        List<Long> ids = new ArrayList<>();
+
+        for (long i = 0; i < 1200; i++) {
+            ids.add(i);
+        }
+
+        assertEquals(1200, lookup.lookup(ids).size());
+
+        verify(caseWrapper, times(3)).getContentsById(anyCollectionOf(Long.class));
+        verify(caseWrapper, never()).getContentById(anyLong());
+    }
+
+    @Test
+    public void testCachedIdsAreNotLookedUpAgain() throws Exception {
+        ContentLookup lookup = new ContentLookup(caseWrapper, ContentLookup.DEFAULT_CAPACITY);
+
+        Content first = lookup.lookup(Arrays.asList(1L, 2L)).get(1L);
+        Content second = lookup.lookup(Arrays.asList(1L, 2L, 1L)).get(1L);
+
+        assertSame(first, second);
+        verify(caseWrapper, times(1)).getContentsById(anyCollectionOf(Long.class));
+    }
+
+    @Test
+    public void testIdsThatAreNotFilesFallBackToSingleLookup() throws Exception {
+        Content image = mock(Content.class);
+
+        when(caseWrapper.getContentById(-1L)).thenReturn(image);
+
+        ContentLookup lookup = new ContentLookup(caseWrapper, ContentLookup.DEFAULT_CAPACITY);
+
+        assertSame(image, lookup.lookup(Arrays.asList(-1L, 1L)).get(-1L));
+        assertFalse(lookup.lookup(Arrays.asList(-2L)).containsKey(-2L));
+        assertFalse(lookup.lookup(Arrays.asList(-2L)).containsKey(-2L));
+
+        verify(caseWrapper, times(1)).getContentById(-2L);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIdsAreEvicted() throws Exception {
+        ContentLookup lookup = new ContentLookup(caseWrapper, 2);
+
+        lookup.lookup(Arrays.asList(1L, 2L));
+        lookup.lookup(Arrays.asList(1L));
+        lookup.lookup(Arrays.asList(3L));
+
+        assertEquals(2, lookup.size());
+
+        lookup.lookup(Arrays.asList(1L));
+        verify(caseWrapper, times(2)).getContentsById(anyCollectionOf(Long.class));
+
+        lookup.lookup(Arrays.asList(2L));
+        verify(caseWrapper, times(3)).getContentsById(anyCollectionOf(Long.class));
+    }
+}
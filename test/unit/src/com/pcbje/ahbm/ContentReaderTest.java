@@ -0,0 +1,200 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ *
+ * @author pcbje
+ */
+public class ContentReaderTest {
+
+    @Test
+    public void testLargeContentIsReadInLargeChunks() throws Exception {
+        byte[] data = getData(ContentReader.MAX_READ * 2 + 1000);
+        Content content = getContent(data);
+
+        ContentReader reader = new ContentReader();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(data.length, reader.read(content, 1024, ContentReader.toChannel(Channels.newChannel(out))));
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(3, reader.getReads());
+        assertEquals(data.length, reader.getBytesRead());
+        verify(content).read(any(byte[].class), eq(0L), eq((long) ContentReader.MAX_READ));
+    }
+
+    @Test
+    public void testSmallContentIsOneRead() throws Exception {
+        byte[] data = getData(3000);
+        Content content = getContent(data);
+
+        ContentReader reader = new ContentReader();
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+
+        reader.read(content, 1024, ContentReader.toDigest(digest));
+
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(data), digest.digest());
+        assertEquals(1, reader.getReads());
+    }
+
+    @Test
+    public void testSummaryCoversReadsOfTheReader() throws Exception {
+        ContentReader reader = new ContentReader();
+
+        assertNull(reader.getSummary());
+
+        reader.read(getContent(getData(2 * 1024 * 1024)), 1024, ContentReader.toStream(new ByteArrayOutputStream()));
+
+        assertTrue(reader.getSummary().startsWith("Read 2.0 MB from the image in 2 reads at "));
+        assertNull(new ContentReader().getSummary());
+    }
+
+    @Test
+    public void testParallelReadsAreTimedByTheWallClock() throws Exception {
+        final ContentReader reader = new ContentReader();
+        final Content content = getContent(getData(3000));
+
+        doAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws InterruptedException {
+                Thread.sleep(200);
+
+                return (int) (long) (Long) invocation.getArguments()[2];
+            }
+        }).when(content).read(any(byte[].class), anyLong(), anyLong());
+
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reader.read(content, 1024, ContentReader.toStream(new ByteArrayOutputStream()));
+                    } catch (Exception ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4, reader.getReads());
+        assertTrue(reader.getReadNanos() >= 200000000L);
+        assertTrue(reader.getReadNanos() < 700000000L);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedContentIsAnError() throws Exception {
+        Content content = getContent(getData(3000));
+        when(content.getSize()).thenReturn(4000L);
+
+        new CaseWrapper(new AhbmJobSettings()).readFile(new ByteArrayOutputStream(), 1024, content);
+    }
+
+    @Test
+    public void testShortReadsAreContinuedUntilTheSegmentIsFull() throws Exception {
+        final byte[] data = getData(10000);
+        Content content = getContent(data);
+
+        doAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                byte[] buffer = (byte[]) invocation.getArguments()[0];
+                int offset = (int) (long) (Long) invocation.getArguments()[1];
+                int length = (int) Math.min(1500, (Long) invocation.getArguments()[2]);
+
+                System.arraycopy(data, offset, buffer, 0, length);
+
+                return length;
+            }
+        }).when(content).read(any(byte[].class), anyLong(), anyLong());
+
+        byte[] segment = new byte[4000];
+
+        assertEquals(4000, new CaseWrapper(new AhbmJobSettings()).readFile(segment, segment.length, content, 5000));
+
+        byte[] expected = new byte[4000];
+        System.arraycopy(data, 5000, expected, 0, expected.length);
+
+        assertArrayEquals(expected, segment);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedSegmentIsAnError() throws Exception {
+        Content content = getContent(getData(3000));
+        when(content.getSize()).thenReturn(8000L);
+
+        new CaseWrapper(new AhbmJobSettings()).readFile(new byte[4000], 4000, content, 2000);
+    }
+
+    @Test
+    public void testInterruptedReadStops() throws Exception {
+        Content content = getContent(getData(3000));
+        ContentReader reader = new ContentReader();
+
+        Thread.currentThread().interrupt();
+
+        try {
+            reader.read(content, 1024, ContentReader.toStream(new ByteArrayOutputStream()));
+            fail("Expected the read to stop");
+        } catch (InterruptedIOException ex) {
+            assertEquals(0, reader.getReads());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private byte[] getData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private Content getContent(final byte[] data) throws Exception {
+        Content content = mock(Content.class);
+        when(content.getSize()).thenReturn((long) data.length);
+        when(content.read(any(byte[].class), anyLong(), anyLong())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                byte[] buffer = (byte[]) invocation.getArguments()[0];
+                int offset = (int) (long) (Long) invocation.getArguments()[1];
+                int length = (int) Math.min((Long) invocation.getArguments()[2], data.length - offset);
+
+                System.arraycopy(data, offset, buffer, 0, length);
+
+                return length;
+            }
+        });
+
+        return content;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author pcbje
+ */
+public class MatchFilterTest {
+
+    private final File set = new File("/sets/a.sdbf");
+
+    private List<SdbfMatch> filter(MatchFilter filter, File referenceSet, final int... scores) throws IOException {
+        final List<SdbfMatch> kept = new ArrayList<>();
+        final File matchSet = referenceSet;
+
+        filter.filter(referenceSet, new SdbfMatch.Handler() {
+            @Override
+            public void handle(SdbfMatch match) {
+                kept.add(match);
+            }
+        }, new MatchFilter.Comparison() {
+            @Override
+            public void compare(SdbfMatch.Handler handler) {
+                for (int i = 0; i < scores.length; i++) {
+                    handler.handle(new SdbfMatch(i % 2 == 0 ? "1" : "2", Integer.toString(i), scores[i], matchSet));
+                }
+            }
+        });
+
+        return kept;
+    }
+
+    @Test
+    public void testMatchesBelowMinimumScoreAreDropped() throws IOException {
+        List<SdbfMatch> kept = filter(new MatchFilter(new MatchFilter.Limit(10, 0)), set, 5, 10, 3, 80);
+
+        assertEquals(2, kept.size());
+        assertEquals(10, kept.get(0).getScore());
+        assertEquals(80, kept.get(1).getScore());
+    }
+
+    @Test
+    public void testBestMatchesOfEachProbeAreKept() throws IOException {
+        List<SdbfMatch> kept = filter(new MatchFilter(new MatchFilter.Limit(1, 2)), set, 20, 5, 90, 6, 50, 7, 1, 8);
+
+        assertEquals(4, kept.size());
+        assertEquals("1", kept.get(0).getProbe());
+        assertEquals(90, kept.get(0).getScore());
+        assertEquals(50, kept.get(1).getScore());
+        assertEquals("2", kept.get(2).getProbe());
+        assertEquals(8, kept.get(2).getScore());
+        assertEquals(7, kept.get(3).getScore());
+    }
+
+    @Test
+    public void testLimitsAreReadPerReferenceSet() throws IOException {
+        AhbmJobSettings settings = new AhbmJobSettings();
+        settings.setMinScore(5);
+        settings.setReferenceSetLimits("a.sdbf=50:1, invalid, b.sdbf=x:1");
+
+        MatchFilter filter = MatchFilter.fromSettings(settings);
+
+        assertEquals(50, filter.getLimit(set).getMinScore());
+        assertEquals(1, filter.getLimit(set).getMaxMatches());
+        assertEquals(5, filter.getLimit(new File("/sets/b.sdbf")).getMinScore());
+        assertEquals(0, filter.getLimit(new File("/sets/b.sdbf")).getMaxMatches());
+
+        assertEquals(2, filter(filter, set, 40, 60, 70, 30).size());
+        assertEquals(2, filter(filter, new File("/sets/c.sdbf"), 4, 5, 6).size());
+    }
+}
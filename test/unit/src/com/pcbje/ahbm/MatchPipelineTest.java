@@ -0,0 +1,193 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import com.pcbje.ahbm.matchable.Matchable;
+import com.pcbje.ahbm.matchable.MatchableHandler;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ *
+ * @author pcbje
+ */
+public class MatchPipelineTest {
+
+    private Sdhash sdhash;
+    private SdbfSet sdbfSet;
+    private MatchableHandler matchHandler;
+
+    @Before
+    public void setup() throws Exception {
+        sdhash = mock(Sdhash.class);
+        when(sdhash.generateSdbf(any(Matchable.class))).thenReturn("sdbf\n");
+
+        sdbfSet = mock(SdbfSet.class);
+        matchHandler = mock(MatchableHandler.class);
+    }
+
+    @Test
+    public void testEveryFileIsHashedMatchedAndPublished() throws Exception {
+        MatchPipeline pipeline = new MatchPipeline(sdhash, sdbfSet, matchHandler, null, 4, 8);
+
+        for (int i = 0; i < 100; i++) {
+            pipeline.submit(getFile(i));
+        }
+
+        pipeline.drain();
+
+        verify(sdhash, times(100)).generateSdbf(any(Matchable.class));
+        verify(sdbfSet, times(100)).addSdbfToOpenCase("sdbf\n");
+        verify(sdbfSet, times(100)).streamMatch(any(Content.class), eq("sdbf\n"));
+        verify(matchHandler, times(100)).handleStreamMatches(any(Collection.class));
+    }
+
+    @Test
+    public void testFullQueueSlowsDownSubmitterInsteadOfDroppingFiles() throws Exception {
+        when(sdhash.generateSdbf(any(Matchable.class))).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(5);
+                return "sdbf\n";
+            }
+        });
+
+        MatchPipeline pipeline = new MatchPipeline(sdhash, sdbfSet, matchHandler, null, 1, 1);
+
+        for (int i = 0; i < 20; i++) {
+            pipeline.submit(getFile(i));
+        }
+
+        pipeline.drain();
+
+        verify(sdbfSet, times(20)).streamMatch(any(Content.class), eq("sdbf\n"));
+    }
+
+    @Test
+    public void testEmptySdbfIsNotMatched() throws Exception {
+        when(sdhash.generateSdbf(any(Matchable.class))).thenReturn("");
+
+        MatchPipeline pipeline = new MatchPipeline(sdhash, sdbfSet, matchHandler, null, 2, 8);
+
+        pipeline.submit(getFile(1));
+        pipeline.drain();
+
+        verify(sdbfSet, never()).addSdbfToOpenCase(anyString());
+        verify(matchHandler, never()).handleStreamMatches(any(Collection.class));
+    }
+
+    @Test
+    public void testProbesGoToBatcherWhenBatching() throws Exception {
+        StreamMatchBatcher batcher = mock(StreamMatchBatcher.class);
+
+        MatchPipeline pipeline = new MatchPipeline(sdhash, sdbfSet, matchHandler, batcher, 2, 8);
+
+        AbstractFile file = getFile(1);
+
+        pipeline.submit(file);
+        pipeline.drain();
+
+        verify(batcher).add(file, "sdbf\n");
+        verify(sdbfSet, never()).streamMatch(any(Content.class), anyString());
+    }
+
+    @Test
+    public void testReadAheadStaysWithinBudget() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+
+        when(sdhash.isPrefetchable(any(Content.class))).thenReturn(true);
+        when(sdhash.readContent(any(Content.class))).thenAnswer(new Answer<Sdhash.ContentBuffer>() {
+            @Override
+            public Sdhash.ContentBuffer answer(InvocationOnMock invocation) throws Throwable {
+                int size = (int) ((Content) invocation.getArguments()[0]).getSize();
+                Sdhash.ContentBuffer content = new Sdhash.ContentBuffer(size);
+                content.write(new byte[size]);
+
+                int current = inFlight.addAndGet(size);
+
+                synchronized (peak) {
+                    peak.set(Math.max(peak.get(), current));
+                }
+
+                return content;
+            }
+        });
+        when(sdhash.generateSdbf(any(Matchable.class), any(byte[].class), anyInt())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(5);
+                inFlight.addAndGet(-(Integer) invocation.getArguments()[2]);
+                return "sdbf\n";
+            }
+        });
+
+        MatchPipeline pipeline = new MatchPipeline(sdhash, sdbfSet, matchHandler, null, 2, 8, 300 * 1024);
+
+        for (int i = 0; i < 20; i++) {
+            AbstractFile file = getFile(i);
+            when(file.getSize()).thenReturn(100 * 1024L);
+            pipeline.submit(file);
+        }
+
+        pipeline.drain();
+
+        verify(sdhash, times(20)).generateSdbf(any(Matchable.class), any(byte[].class), eq(100 * 1024));
+        verify(sdhash, never()).generateSdbf(any(Matchable.class));
+        verify(sdbfSet, times(20)).streamMatch(any(Content.class), eq("sdbf\n"));
+        assertTrue(peak.get() <= 300 * 1024);
+    }
+
+    @Test
+    public void testContentThatIsNotHashedInProcessIsNotReadAhead() throws Exception {
+        MatchPipeline pipeline = new MatchPipeline(sdhash, sdbfSet, matchHandler, null, 2, 8, 300 * 1024);
+
+        pipeline.submit(getFile(1));
+        pipeline.drain();
+
+        verify(sdhash, never()).readContent(any(Content.class));
+        verify(sdhash).generateSdbf(any(Matchable.class));
+    }
+
+    @Test
+    public void testContentLargerThanBudgetIsNotReadAhead() throws Exception {
+        when(sdhash.isPrefetchable(any(Content.class))).thenReturn(true);
+
+        MatchPipeline pipeline = new MatchPipeline(sdhash, sdbfSet, matchHandler, null, 2, 8, 300 * 1024);
+
+        AbstractFile file = getFile(1);
+        when(file.getSize()).thenReturn(301 * 1024L);
+
+        pipeline.submit(file);
+        pipeline.drain();
+
+        verify(sdhash, never()).readContent(any(Content.class));
+        verify(sdhash).generateSdbf(any(Matchable.class));
+    }
+
+    private AbstractFile getFile(long id) {
+        AbstractFile file = mock(AbstractFile.class);
+        when(file.getId()).thenReturn(id);
+        when(file.getName()).thenReturn("file-" + id);
+        return file;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author pcbje
+ */
+public class OpenCaseIndexTest {
+
+    @Test
+    public void testSnapshotDoesNotGrow() throws IOException {
+        Sdbf sdbf = getSdbf();
+        OpenCaseIndex index = new OpenCaseIndex();
+
+        index.add(sdbf);
+
+        List<Sdbf> snapshot = index.snapshot();
+
+        index.add(sdbf);
+
+        assertEquals(1, snapshot.size());
+        assertEquals(2, index.snapshot().size());
+        assertSame(sdbf, index.snapshot().get(1));
+    }
+
+    @Test
+    public void testReadersSeeEveryPublishedDigest() throws Exception {
+        final Sdbf sdbf = getSdbf();
+        final OpenCaseIndex index = new OpenCaseIndex();
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (index.size() < 5000) {
+                    for (Sdbf added : index.snapshot()) {
+                        if (added != sdbf) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            }
+        });
+
+        reader.start();
+
+        for (int i = 0; i < 5000; i++) {
+            index.add(sdbf);
+        }
+
+        reader.join();
+
+        assertFalse(failed.get());
+        assertEquals(5000, index.snapshot().size());
+    }
+
+    private Sdbf getSdbf() throws IOException {
+        return Sdbf.parseFile(new File(getClass().getClassLoader().getResource("loremipsum.sdbf").getPath())).get(0);
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author pcbje
+ */
+public class SdbfBinaryTest {
+
+    @Test
+    public void testReadWhatWasWritten() throws IOException {
+        File binary = writeBinary("loremlorem.sdbf");
+
+        List<Sdbf> expected = Sdbf.parseFile(getResource("loremlorem.sdbf"));
+        SdbfBinary.Cursor actual = SdbfBinary.open(binary).cursor();
+
+        assertEquals(expected.size(), SdbfBinary.open(binary).size());
+
+        for (Sdbf sdbf : expected) {
+            assertTrue(actual.next());
+            assertEquals(sdbf.getName(), actual.getName());
+            assertEquals(sdbf.getSize(), actual.getSize());
+            assertEquals(sdbf.getBfCount(), actual.getBfCount());
+            assertEquals(sdbf.getElemCount(0), actual.getElemCount(0));
+            assertEquals(sdbf.getHamming(0), actual.getHamming(0));
+            assertEquals(sdbf.getFilters(), actual.getFilters());
+        }
+
+        assertFalse(actual.next());
+    }
+
+    @Test
+    public void testMappedBlockDigestScoresLikeText() throws IOException {
+        Sdbf text = Sdbf.parseFile(getResource("dummy.sdbf")).get(0);
+        SdbfBinary.Cursor mapped = SdbfBinary.open(writeBinary("dummy.sdbf")).cursor();
+
+        assertTrue(mapped.next());
+
+        assertEquals("dummy.txt.0000M", mapped.getName());
+        assertEquals(SdbfComparator.score(text, text), SdbfComparator.score(text, mapped));
+    }
+
+    @Test
+    public void testComparatorUsesUpToDateBinary() throws IOException {
+        File reference = getResource("loremlorem.sdbf");
+        File binary = writeBinary("loremlorem.sdbf");
+
+        SdbfComparator comparator = new SdbfComparator();
+        comparator.load(reference, binary);
+
+        String expected = String.format("loremipsum|loremipsum|100|%s\nloremipsum|ipsumlorem|087|%s\n",
+                reference.getAbsolutePath(), reference.getAbsolutePath());
+
+        assertEquals(expected, comparator.compareSets(Sdbf.parseFile(getResource("loremipsum.sdbf")), reference));
+    }
+
+    @Test
+    public void testChangedReferenceSetIsOutdated() throws IOException {
+        File reference = File.createTempFile("loremlorem", ".sdbf");
+        reference.deleteOnExit();
+
+        byte[] content = Files.readAllBytes(getResource("loremlorem.sdbf").toPath());
+        Files.write(reference.toPath(), content);
+
+        File binary = File.createTempFile("loremlorem", SdbfBinary.EXTENSION);
+        binary.deleteOnExit();
+
+        SdbfBinary.write(reference, binary);
+
+        assertTrue(SdbfBinary.isUpToDate(binary, reference));
+
+        content[content.length / 2] ^= 1;
+        Files.write(reference.toPath(), content);
+        reference.setLastModified(binary.lastModified() - 1000);
+
+        assertFalse(SdbfBinary.isUpToDate(binary, reference));
+    }
+
+    @Test
+    public void testTouchedReferenceSetIsUpToDate() throws IOException {
+        File binary = writeBinary("loremlorem.sdbf");
+        binary.setLastModified(getResource("loremlorem.sdbf").lastModified() - 1000);
+
+        assertTrue(SdbfBinary.isUpToDate(binary, getResource("loremlorem.sdbf")));
+    }
+
+    @Test
+    public void testUnchangedReferenceSetIsNotHashedAgain() throws IOException {
+        File reference = File.createTempFile("loremlorem", ".sdbf");
+        reference.deleteOnExit();
+
+        byte[] content = Files.readAllBytes(getResource("loremlorem.sdbf").toPath());
+        Files.write(reference.toPath(), content);
+
+        File binary = File.createTempFile("loremlorem", SdbfBinary.EXTENSION);
+        binary.deleteOnExit();
+
+        SdbfBinary.write(reference, binary);
+
+        reference.setLastModified(reference.lastModified() - 10000);
+
+        assertTrue(SdbfBinary.isUpToDate(binary, reference));
+
+        long touched = reference.lastModified();
+
+        content[content.length / 2] ^= 1;
+        Files.write(reference.toPath(), content);
+        reference.setLastModified(touched);
+
+        assertTrue(SdbfBinary.isUpToDate(binary, reference));
+
+        reference.setLastModified(touched - 10000);
+
+        assertFalse(SdbfBinary.isUpToDate(binary, reference));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTextSetIsNotReadAsBinary() throws IOException {
+        SdbfBinary.open(getResource("loremlorem.sdbf"));
+    }
+
+    private File writeBinary(String name) throws IOException {
+        File binary = File.createTempFile(name, SdbfBinary.EXTENSION);
+        binary.deleteOnExit();
+
+        SdbfBinary.write(getResource(name), binary);
+
+        return binary;
+    }
+
+    private File getResource(String name) {
+        return new File(getClass().getClassLoader().getResource(name).getPath());
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ *
+ * @author pcbje
+ */
+public class SdbfCacheTest {
+
+    private File storeFile;
+    private SdbfStore store;
+    private String sdbf;
+
+    @Before
+    public void setup() throws IOException {
+        storeFile = File.createTempFile("sdbf", "store");
+        storeFile.deleteOnExit();
+        store = SdbfStore.open(storeFile, "engine=JAVA");
+
+        BufferedReader reader = new BufferedReader(new FileReader(getClass().getClassLoader().getResource("loremipsum.sdbf").getPath()));
+        sdbf = reader.readLine();
+        reader.close();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void testCachedSdbfIsRenamed() throws IOException {
+        SdbfCache cache = new SdbfCache(store);
+        cache.putSdbf(1, "abc:1673", sdbf + "\n");
+
+        assertEquals(sdbf.replace(":10:loremipsum:", ":2:42:"), cache.getSdbf("abc:1673", "42").trim());
+        assertNull(cache.getSdbf("abc:1674", "42"));
+    }
+
+    @Test
+    public void testCacheIsReadByLaterJobsFromTheStore() throws IOException {
+        SdbfCache cache = new SdbfCache(store);
+        cache.putSdbf(1, "abc:1673", sdbf + "\n");
+        store.close();
+
+        store = SdbfStore.open(storeFile, "engine=JAVA");
+        SdbfCache later = new SdbfCache(store);
+
+        assertEquals(1, store.size());
+        assertEquals(sdbf + "\n", store.get(1));
+        assertEquals(sdbf, later.getSdbf("abc:1673", "loremipsum").trim());
+    }
+
+    @Test
+    public void testMultiLineSdbfIsOnlyStoredById() throws IOException {
+        SdbfCache cache = new SdbfCache(store);
+        cache.putSdbf(1, "abc:1673", sdbf + "\n" + sdbf + "\n");
+
+        assertFalse(cache.contains("abc:1673"));
+        assertTrue(store.contains(1));
+    }
+
+    @Test
+    public void testMatchesAreWrittenForNewProbe() throws IOException {
+        SdbfCache cache = new SdbfCache(store);
+        File set = new File("/sets/a.sdbf");
+        cache.putMatches("abc:1673", Arrays.asList(new SdbfMatch("1", "loremipsum", 100, set), new SdbfMatch("1", "ipsumlorem", 87, set)));
+
+        List<SdbfMatch> matches = cache.getMatches("abc:1673", "2");
+
+        assertEquals(2, matches.size());
+        assertEquals("2|loremipsum|100|" + set.getAbsolutePath(), matches.get(0).toString());
+        assertEquals("2|ipsumlorem|087|" + set.getAbsolutePath(), matches.get(1).toString());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedMatchesAreDropped() {
+        SdbfCache cache = new SdbfCache(store, 2);
+        File set = new File("/sets/a.sdbf");
+        List<SdbfMatch> results = Arrays.asList(new SdbfMatch("1", "loremipsum", 100, set));
+
+        cache.putMatches("a:1", results);
+        cache.putMatches("b:1", results);
+        cache.getMatches("a:1", "2");
+        cache.putMatches("c:1", results);
+
+        assertNotNull(cache.getMatches("a:1", "2"));
+        assertNull(cache.getMatches("b:1", "2"));
+        assertNotNull(cache.getMatches("c:1", "2"));
+    }
+
+    @Test
+    public void testKeyRequiresMd5() {
+        AbstractFile file = mock(AbstractFile.class);
+        when(file.getSize()).thenReturn(1673L);
+
+        assertNull(SdbfCache.getKey(file));
+        assertNull(SdbfCache.getKey(mock(Content.class)));
+
+        when(file.getMd5Hash()).thenReturn("ABC");
+
+        assertEquals("abc:1673", SdbfCache.getKey(file));
+    }
+}
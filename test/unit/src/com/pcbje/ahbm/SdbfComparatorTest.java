@@ -0,0 +1,102 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author pcbje
+ */
+public class SdbfComparatorTest {
+
+    private SdbfComparator comparator;
+
+    @Before
+    public void setup() {
+        comparator = new SdbfComparator();
+    }
+
+    @Test
+    public void testScoreSameAsSdhash() throws IOException {
+        Sdbf loremipsum = Sdbf.parseFile(getResource("loremipsum.sdbf")).get(0);
+        Sdbf ipsumlorem = Sdbf.parseFile(getResource("ipsumlorem.sdbf")).get(0);
+
+        assertEquals(100, SdbfComparator.score(loremipsum, loremipsum));
+        assertEquals(87, SdbfComparator.score(loremipsum, ipsumlorem));
+        assertEquals(87, SdbfComparator.score(ipsumlorem, loremipsum));
+    }
+
+    @Test
+    public void testCompareSets() throws IOException {
+        File reference = getResource("loremlorem.sdbf");
+        List<Sdbf> probes = Sdbf.parseFile(getResource("loremipsum.sdbf"));
+
+        String expected = String.format("loremipsum|loremipsum|100|%s\nloremipsum|ipsumlorem|087|%s\n",
+                reference.getAbsolutePath(), reference.getAbsolutePath());
+
+        assertEquals(expected, comparator.compareSets(probes, reference));
+    }
+
+    @Test
+    public void testDissimilarDigestsAreNotReported() throws IOException {
+        File reference = getResource("dummy.sdbf");
+        List<Sdbf> probes = Sdbf.parseFile(getResource("loremipsum.sdbf"));
+
+        assertEquals("", comparator.compareSets(probes, reference));
+    }
+
+    @Test
+    public void testInterruptedCompareStops() throws IOException {
+        File reference = getResource("loremlorem.sdbf");
+        List<Sdbf> probes = Sdbf.parseFile(getResource("loremipsum.sdbf"));
+        final List<SdbfMatch> matches = new ArrayList<>();
+
+        SdbfMatch.Handler handler = new SdbfMatch.Handler() {
+            @Override
+            public void handle(SdbfMatch match) {
+                matches.add(match);
+            }
+        };
+
+        Thread.currentThread().interrupt();
+
+        try {
+            comparator.compareSets(probes, reference, handler);
+            fail("Expected the comparison to stop");
+        } catch (InterruptedIOException ex) {
+            assertTrue(matches.isEmpty());
+        }
+
+        try {
+            comparator.compareSets(probes, Sdbf.parseFile(reference), reference, handler);
+            fail("Expected the comparison to stop");
+        } catch (InterruptedIOException ex) {
+            assertTrue(matches.isEmpty());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private File getResource(String name) {
+        return new File(getClass().getClassLoader().getResource(name).getPath());
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author pcbje
+ */
+public class SdbfGeneratorTest {
+
+    @Test
+    public void testGenerateMatchesSdhash() throws IOException {
+        byte[] data = readResource("ipsumlorem.txt");
+
+        String generated = new SdbfGenerator().generate("ipsumlorem", data, data.length);
+
+        assertEquals(readFirstLine("ipsumlorem.sdbf"), generated.trim());
+    }
+
+    @Test
+    public void testSmallFilesAreSkipped() {
+        byte[] data = new byte[SdbfGenerator.MIN_FILE_SIZE - 1];
+
+        assertEquals("", new SdbfGenerator().generate("small", data, data.length));
+    }
+
+    @Test
+    public void testNameLengthIsWrittenToHeader() throws IOException {
+        byte[] data = readResource("ipsumlorem.txt");
+
+        String generated = new SdbfGenerator().generate("12345", data, data.length);
+
+        assertTrue(generated.startsWith("sdbf:03:5:12345:1674:"));
+    }
+
+    @Test
+    public void testBlockModeDigestsEveryBlock() throws IOException {
+        byte[] text = readResource("ipsumlorem.txt");
+        byte[] data = new byte[SdbfGenerator.DD_BLOCK_SIZE * 2 + text.length];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = text[i % text.length];
+        }
+
+        String generated = new SdbfGenerator().generateBlocks("1.0000M", data, data.length, SdbfGenerator.DD_BLOCK_SIZE);
+
+        assertTrue(generated.startsWith("sdbf-dd:03:7:1.0000M:" + data.length + ":sha1:256:5:7ff:192:3:16384:"));
+
+        Sdbf sdbf = Sdbf.parse(generated);
+
+        assertEquals(3, sdbf.getBfCount());
+        assertTrue(sdbf.getElemCount(0) > SdbfComparator.MIN_ELEM_COUNT);
+        assertTrue(SdbfComparator.score(sdbf, Sdbf.parse(new SdbfGenerator().generate("text", text, text.length))) >= 90);
+    }
+
+    @Test
+    public void testBlockModeMatchesSdhash() throws IOException {
+        byte[] data = readResource("dummy.txt");
+
+        String generated = new SdbfGenerator().generateBlocks("dummy.txt.0000M", data, data.length, SdbfGenerator.DD_BLOCK_SIZE);
+
+        assertEquals(readFirstLine("dummy.sdbf"), generated.trim());
+    }
+
+    @Test
+    public void testBlockElementCountIsLowerCaseHex() {
+        byte[] data = new byte[SdbfGenerator.DD_BLOCK_SIZE];
+        new Random(1).nextBytes(data);
+
+        String generated = new SdbfGenerator().generateBlocks("random", data, data.length, SdbfGenerator.DD_BLOCK_SIZE);
+
+        assertEquals("c0", generated.split(":")[12]);
+        assertEquals(SdbfGenerator.MAX_ELEM_DD, Sdbf.parse(generated).getElemCount(0));
+    }
+
+    private byte[] readResource(String name) throws IOException {
+        File file = new File(getClass().getClassLoader().getResource(name).getPath());
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream fis = new FileInputStream(file);
+        fis.read(data);
+        fis.close();
+        return data;
+    }
+
+    private String readFirstLine(String name) throws IOException {
+        File file = new File(getClass().getClassLoader().getResource(name).getPath());
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        String line = reader.readLine();
+        reader.close();
+        return line;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author pcbje
+ */
+public class SdbfMatchParserTest {
+
+    private final File set = new File("/sets/a.sdbf");
+    private List<SdbfMatch> matches;
+    private SdbfMatchParser parser;
+
+    @Before
+    public void setUp() {
+        matches = new ArrayList<>();
+        parser = new SdbfMatchParser(set, new SdbfMatch.Handler() {
+            @Override
+            public void handle(SdbfMatch match) {
+                matches.add(match);
+            }
+        });
+    }
+
+    private void handle(String line) throws Exception {
+        byte[] bytes = line.getBytes("UTF-8");
+        byte[] buffer = new byte[bytes.length + 16];
+
+        System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+
+        parser.handle(buffer, bytes.length);
+    }
+
+    @Test
+    public void testMatchesAreParsedIntoRecords() throws Exception {
+        handle("12|7.0064M|087");
+        handle("12|bl\u00e5|100");
+
+        assertEquals(2, matches.size());
+        assertEquals("12", matches.get(0).getProbe());
+        assertEquals("7.0064M", matches.get(0).getMatch());
+        assertEquals(87, matches.get(0).getScore());
+        assertSame(set, matches.get(0).getReferenceSet());
+        assertEquals("bl\u00e5", matches.get(1).getMatch());
+        assertEquals(100, matches.get(1).getScore());
+    }
+
+    @Test
+    public void testProbeNameIsReusedForConsecutiveLines() throws Exception {
+        handle("12|7|087");
+        handle("12|8|050");
+        handle("13|8|050");
+
+        assertSame(matches.get(0).getProbe(), matches.get(1).getProbe());
+        assertEquals("13", matches.get(2).getProbe());
+    }
+
+    @Test
+    public void testLinesThatAreNotMatchesAreIgnored() throws Exception {
+        handle("");
+        handle("warning: file too small");
+        handle("12|7|");
+        handle("12|7|abc");
+        handle("|7|010");
+
+        assertTrue(matches.isEmpty());
+    }
+}
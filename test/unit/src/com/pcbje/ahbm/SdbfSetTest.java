@@ -20,15 +20,20 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.TskCoreException;
@@ -47,7 +52,7 @@ public class SdbfSetTest {
     public void setup() {
         sdbfSet = new SdbfSet(new AhbmJobSettings());
         caseWrapper = mock(CaseWrapper.class);
-        SdbfSet.setCaseWrapper(caseWrapper);
+        sdbfSet.setCaseWrapper(caseWrapper);
         Matchable.setCaseWrapper(caseWrapper);
     }
 
@@ -90,6 +95,115 @@ public class SdbfSetTest {
         assertEquals("087", match.getChildren().get(1).getParentSimilarity());
     }
 
+    @Test
+    public void testParallelStreamMatchingKeepsStreamSetOrder() throws IOException, TskCoreException {
+        List<File> streamSets = new ArrayList<File>();
+
+        for (String name : new String[]{"loremlorem.sdbf", "dummy.sdbf", "loremipsum.sdbf", "ipsumlorem.sdbf"}) {
+            streamSets.add(new File(getClass().getClassLoader().getResource(name).getPath()));
+        }
+
+        AhbmJobSettings settings = new AhbmJobSettings();
+        settings.setCompareParallelism(4);
+
+        SdbfSet parallel = new SdbfSet(settings);
+        parallel.setCaseWrapper(caseWrapper);
+        parallel.setStreamSets(streamSets);
+        sdbfSet.setStreamSets(streamSets);
+
+        Content content = mock(Content.class);
+        when(content.getName()).thenReturn("loremipsum");
+
+        List<Matchable> expected = sdbfSet.streamMatch(content, getProbeSdbf()).iterator().next().getChildren();
+        List<Matchable> actual = parallel.streamMatch(content, getProbeSdbf()).iterator().next().getChildren();
+
+        parallel.close();
+
+        assertEquals(4, actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getFilename(), actual.get(i).getFilename());
+            assertEquals(expected.get(i).getReferenceSet(), actual.get(i).getReferenceSet());
+            assertEquals(expected.get(i).getParentSimilarity(), actual.get(i).getParentSimilarity());
+        }
+    }
+
+    @Test
+    public void testFilesInSameJobAreMatchedWithEachOther() throws IOException, TskCoreException {
+        final File moduleDir = Files.createTempDirectory("ahbm-open-case").toFile();
+
+        when(caseWrapper.getFileInModuleDir(any(String.class))).thenAnswer(new Answer<File>() {
+            @Override
+            public File answer(InvocationOnMock invocation) {
+                return new File(moduleDir, (String) invocation.getArguments()[0]);
+            }
+        });
+
+        sdbfSet.loadDefaultStreamSets(true);
+
+        String loremipsum = getProbeSdbf() + "\n";
+        String ipsumlorem = getSdbf("ipsumlorem.sdbf") + "\n";
+
+        Content first = mock(Content.class);
+        when(first.getName()).thenReturn("loremipsum");
+
+        Content second = mock(Content.class);
+        when(second.getName()).thenReturn("ipsumlorem");
+
+        sdbfSet.addSdbfToOpenCase(loremipsum);
+
+        assertEquals(0, sdbfSet.streamMatch(first, loremipsum).iterator().next().getChildren().size());
+
+        sdbfSet.addSdbfToOpenCase(ipsumlorem);
+
+        Matchable match = sdbfSet.streamMatch(second, ipsumlorem).iterator().next();
+
+        sdbfSet.close();
+
+        assertEquals(1, match.getChildren().size());
+        assertEquals("loremipsum", match.getChildren().get(0).getFilename());
+        assertEquals("087", match.getChildren().get(0).getParentSimilarity());
+        assertEquals("Open case", match.getChildren().get(0).getReferenceSetName());
+    }
+
+    @Test
+    public void testCachedMatchesAreCombinedWithTheOpenCase() throws IOException, TskCoreException {
+        final File moduleDir = Files.createTempDirectory("ahbm-open-case").toFile();
+
+        when(caseWrapper.getFileInModuleDir(any(String.class))).thenAnswer(new Answer<File>() {
+            @Override
+            public File answer(InvocationOnMock invocation) {
+                return new File(moduleDir, (String) invocation.getArguments()[0]);
+            }
+        });
+
+        SdbfStore store = SdbfStore.open(new File(moduleDir, SdbfStore.DEFAULT_STORE_FILE), "engine=JAVA");
+        sdbfSet.setCache(new SdbfCache(store));
+        sdbfSet.loadDefaultStreamSets(true);
+
+        String loremipsum = getProbeSdbf() + "\n";
+
+        AbstractFile file = mock(AbstractFile.class);
+        when(file.getName()).thenReturn("loremipsum");
+        when(file.getMd5Hash()).thenReturn("abc");
+        when(file.getSize()).thenReturn(1673L);
+
+        sdbfSet.addSdbfToOpenCase(loremipsum);
+
+        assertEquals(0, sdbfSet.streamMatch(file, loremipsum).iterator().next().getChildren().size());
+
+        sdbfSet.addSdbfToOpenCase(getSdbf("ipsumlorem.sdbf") + "\n");
+
+        Matchable match = sdbfSet.streamMatch(file, loremipsum).iterator().next();
+
+        sdbfSet.close();
+        store.close();
+
+        assertEquals(1, match.getChildren().size());
+        assertEquals("ipsumlorem", match.getChildren().get(0).getFilename());
+        assertEquals("Open case", match.getChildren().get(0).getReferenceSetName());
+    }
+
     @Test
     public void testStreamMatchingWithMatchInOpenCase() throws IOException, TskCoreException {
         List<File> streamSets = new ArrayList<File>();
@@ -201,8 +315,333 @@ public class SdbfSetTest {
         assertEquals(1, match.getChildren().size());
     }
 
+    @Test
+    public void testSegmentMatchesMapToOffsets() throws IOException, TskCoreException {
+        File streamSet = File.createTempFile("segments", ".sdbf");
+        streamSet.deleteOnExit();
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(streamSet));
+        writer.write(Sdbf.rename(getSdbf("ipsumlorem.sdbf"), "7.0002M"));
+        writer.write("\n");
+        writer.close();
+
+        List<File> streamSets = new ArrayList<File>();
+        streamSets.add(streamSet);
+        sdbfSet.setStreamSets(streamSets);
+
+        Content content = mock(Content.class);
+        when(content.getName()).thenReturn("loremipsum");
+
+        String segment = Sdbf.rename(getProbeSdbf(), Sdbf.getSegmentName("loremipsum", 64L << 20));
+
+        Matchable match = sdbfSet.streamMatch(content, segment).iterator().next().getChildren().get(0);
+
+        assertEquals("7 (offset 2097152)", match.getFilename());
+        assertEquals(2L << 20, match.getOffset());
+        assertEquals(64L << 20, match.getParentOffset());
+    }
+
+    @Test
+    public void testBlockMatchesMapToTheMatchingBlock() throws IOException, TskCoreException {
+        byte[] text = Files.readAllBytes(new File(getClass().getClassLoader().getResource("ipsumlorem.txt").getPath()).toPath());
+        byte[] data = new byte[SdbfGenerator.DD_BLOCK_SIZE * 3];
+        new Random(1).nextBytes(data);
+
+        for (int i = SdbfGenerator.DD_BLOCK_SIZE * 2; i < data.length; i++) {
+            data[i] = text[i % text.length];
+        }
+
+        File streamSet = File.createTempFile("blocks", ".sdbf");
+        streamSet.deleteOnExit();
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(streamSet));
+        writer.write(new SdbfGenerator().generateBlocks("7.0002M", data, data.length, SdbfGenerator.DD_BLOCK_SIZE));
+        writer.close();
+
+        List<File> streamSets = new ArrayList<File>();
+        streamSets.add(streamSet);
+        sdbfSet.setStreamSets(streamSets);
+
+        Content content = mock(Content.class);
+        when(content.getName()).thenReturn("ipsumlorem");
+
+        Matchable match = sdbfSet.streamMatch(content, new SdbfGenerator().generate("ipsumlorem", text, text.length)).iterator().next().getChildren().get(0);
+
+        long offset = (2L << 20) + 2 * SdbfGenerator.DD_BLOCK_SIZE;
+
+        assertEquals(String.format("7 (offset %d)", offset), match.getFilename());
+        assertEquals(offset, match.getOffset());
+        assertEquals(-1, match.getParentOffset());
+    }
+
+    @Test
+    public void testMatchesAreAddedAsEachSetIsDone() throws IOException, TskCoreException {
+        File streamSet = new File(getClass().getClassLoader().getResource("loremipsum.sdbf").getPath());
+        List<File> streamSets = new ArrayList<File>();
+        streamSets.add(streamSet);
+        streamSets.add(streamSet);
+        sdbfSet.setStreamSets(streamSets);
+
+        Content content = mock(Content.class);
+        when(content.getName()).thenReturn("loremipsum");
+
+        Sdhash sdhash = mock(Sdhash.class);
+        when(sdhash.generateSdbf(any(Matchable.class))).thenReturn(getProbeSdbf());
+        sdbfSet.setSdhash(sdhash);
+
+        final Matchable match = new Matchable("loremipsum", content);
+        Map<String, Matchable> input = new HashMap<String, Matchable>();
+        input.put("loremipsum", match);
+
+        final List<Integer> childrenPerSet = new ArrayList<Integer>();
+
+        sdbfSet.searchMatching(input, new SdbfSet.SearchListener() {
+            @Override
+            public void searchStarted(int probes, int streamSets) {
+                assertEquals(1, probes);
+                assertEquals(2, streamSets);
+            }
+
+            @Override
+            public void probeHashed(Matchable probe) {
+                assertSame(match, probe);
+            }
+
+            @Override
+            public void setCompared(File streamSet) {
+                childrenPerSet.add(match.getChildren().size());
+            }
+
+            @Override
+            public void update(Runnable changes) {
+                changes.run();
+            }
+        });
+
+        assertEquals(2, childrenPerSet.size());
+        assertEquals(1, (int) childrenPerSet.get(0));
+        assertEquals(2, (int) childrenPerSet.get(1));
+        assertTrue(match.isCompleted());
+    }
+
+    @Test
+    public void testParallelSearchAddsMatchesAsEachSetIsDone() throws IOException, TskCoreException {
+        List<File> streamSets = new ArrayList<File>();
+
+        for (String name : new String[]{"loremlorem.sdbf", "dummy.sdbf", "loremipsum.sdbf", "ipsumlorem.sdbf"}) {
+            streamSets.add(new File(getClass().getClassLoader().getResource(name).getPath()));
+        }
+
+        AhbmJobSettings settings = new AhbmJobSettings();
+        settings.setCompareParallelism(4);
+
+        SdbfSet parallel = new SdbfSet(settings);
+        parallel.setCaseWrapper(caseWrapper);
+        parallel.setStreamSets(streamSets);
+
+        Content content = mock(Content.class);
+        when(content.getName()).thenReturn("loremipsum");
+
+        Sdhash sdhash = mock(Sdhash.class);
+        when(sdhash.generateSdbf(any(Matchable.class))).thenReturn(getProbeSdbf());
+        parallel.setSdhash(sdhash);
+
+        final Matchable match = new Matchable("loremipsum", content);
+        Map<String, Matchable> input = new HashMap<String, Matchable>();
+        input.put("loremipsum", match);
+
+        final List<File> compared = new ArrayList<File>();
+        final List<Integer> childrenPerSet = new ArrayList<Integer>();
+
+        parallel.searchMatching(input, new SdbfSet.SearchListener() {
+            @Override
+            public void searchStarted(int probes, int streamSets) {
+                assertEquals(4, streamSets);
+            }
+
+            @Override
+            public void probeHashed(Matchable probe) {
+            }
+
+            @Override
+            public void setCompared(File streamSet) {
+                compared.add(streamSet);
+                childrenPerSet.add(match.getChildren().size());
+            }
+
+            @Override
+            public void update(Runnable changes) {
+                changes.run();
+            }
+        });
+
+        parallel.close();
+
+        assertEquals(4, compared.size());
+        assertTrue(compared.containsAll(streamSets));
+        assertEquals(4, match.getChildren().size());
+        assertEquals(4, (int) childrenPerSet.get(3));
+
+        for (int i = 1; i < childrenPerSet.size(); i++) {
+            assertTrue(childrenPerSet.get(i) >= childrenPerSet.get(i - 1));
+        }
+
+        assertTrue(match.isCompleted());
+    }
+
+    @Test
+    public void testCaseSetIsSharedUntilTheSettingsChange() {
+        AhbmJobSettings settings = new AhbmJobSettings();
+
+        try {
+            SdbfSet shared = SdbfSet.getCaseSet(settings);
+
+            assertSame(shared, SdbfSet.getCaseSet(settings));
+
+            SdbfSet changed = SdbfSet.getCaseSet(new AhbmJobSettings());
+
+            assertNotSame(shared, changed);
+
+            SdbfSet.closeCaseSet();
+
+            assertNotSame(changed, SdbfSet.getCaseSet(settings));
+        } finally {
+            SdbfSet.closeCaseSet();
+        }
+    }
+
+    @Test
+    public void testSearchChangesProbesOnlyThroughTheListener() throws IOException, TskCoreException {
+        List<File> streamSets = new ArrayList<File>();
+        streamSets.add(new File(getClass().getClassLoader().getResource("loremlorem.sdbf").getPath()));
+        sdbfSet.setStreamSets(streamSets);
+
+        Sdhash sdhash = mock(Sdhash.class);
+        when(sdhash.generateSdbf(any(Matchable.class))).thenReturn(getProbeSdbf());
+        sdbfSet.setSdhash(sdhash);
+
+        Matchable match = new Matchable("loremipsum", mock(Content.class));
+        Map<String, Matchable> input = new HashMap<String, Matchable>();
+        input.put("loremipsum", match);
+
+        final List<Runnable> updates = new ArrayList<Runnable>();
+        final List<File> compared = new ArrayList<File>();
+
+        sdbfSet.searchMatching(input, new SdbfSet.SearchListener() {
+            @Override
+            public void searchStarted(int probes, int streamSets) {
+            }
+
+            @Override
+            public void probeHashed(Matchable probe) {
+            }
+
+            @Override
+            public void setCompared(File streamSet) {
+                compared.add(streamSet);
+            }
+
+            @Override
+            public void update(Runnable changes) {
+                updates.add(changes);
+            }
+        });
+
+        assertTrue(match.getChildren().isEmpty());
+        assertFalse(match.isExpanded());
+        assertTrue(compared.isEmpty());
+
+        for (Runnable changes : updates) {
+            changes.run();
+        }
+
+        assertFalse(match.getChildren().isEmpty());
+        assertTrue(match.isExpanded());
+        assertTrue(match.isCompleted());
+        assertEquals(streamSets, compared);
+    }
+
+    @Test
+    public void testRetiredSetClosesWhenTheLastSearchIsDone() throws IOException, TskCoreException {
+        final List<File> streamSets = new ArrayList<File>();
+        streamSets.add(new File(getClass().getClassLoader().getResource("loremlorem.sdbf").getPath()));
+        sdbfSet.setStreamSets(streamSets);
+
+        Sdhash sdhash = mock(Sdhash.class);
+        when(sdhash.generateSdbf(any(Matchable.class))).thenReturn(getProbeSdbf());
+        sdbfSet.setSdhash(sdhash);
+
+        final Matchable match = new Matchable("loremipsum", mock(Content.class));
+        Map<String, Matchable> input = new HashMap<String, Matchable>();
+        input.put("loremipsum", match);
+
+        sdbfSet.searchMatching(input, new SdbfSet.SearchListener() {
+            @Override
+            public void searchStarted(int probes, int streamSets) {
+                sdbfSet.retire();
+            }
+
+            @Override
+            public void probeHashed(Matchable probe) {
+            }
+
+            @Override
+            public void setCompared(File streamSet) {
+                assertSame(streamSets, sdbfSet.getStreamSets());
+            }
+
+            @Override
+            public void update(Runnable changes) {
+                changes.run();
+            }
+        });
+
+        assertFalse(match.getChildren().isEmpty());
+        assertNull(sdbfSet.getStreamSets());
+    }
+
+    @Test
+    public void testRetiredSetWithoutSearchesClosesAtOnce() {
+        sdbfSet.setStreamSets(new ArrayList<File>());
+
+        sdbfSet.retire();
+
+        assertNull(sdbfSet.getStreamSets());
+    }
+
+    @Test
+    public void testInterruptedSearchStops() throws IOException, TskCoreException {
+        List<File> streamSets = new ArrayList<File>();
+        streamSets.add(new File(getClass().getClassLoader().getResource("loremipsum.sdbf").getPath()));
+        sdbfSet.setStreamSets(streamSets);
+
+        Sdhash sdhash = mock(Sdhash.class);
+        sdbfSet.setSdhash(sdhash);
+
+        Matchable match = new Matchable("loremipsum", mock(Content.class));
+        Map<String, Matchable> input = new HashMap<String, Matchable>();
+        input.put("loremipsum", match);
+
+        Thread.currentThread().interrupt();
+
+        try {
+            sdbfSet.searchMatching(input, null);
+            fail("Expected the search to stop");
+        } catch (InterruptedIOException ex) {
+            verify(sdhash, never()).generateSdbf(any(Matchable.class));
+            assertTrue(match.isCompleted());
+            assertEquals(0, match.getChildren().size());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
     private String getProbeSdbf() throws IOException {
-        File probeFile = new File(getClass().getClassLoader().getResource("loremipsum.sdbf").getPath());
+        return getSdbf("loremipsum.sdbf");
+    }
+
+    private String getSdbf(String name) throws IOException {
+        File probeFile = new File(getClass().getClassLoader().getResource(name).getPath());
         BufferedReader probeReader = new BufferedReader(new FileReader(probeFile));
         String probe = probeReader.readLine();
         probeReader.close();
@@ -0,0 +1,163 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author pcbje
+ */
+public class SdbfStoreTest {
+
+    private static final String GENERATOR = "engine=JAVA";
+    private File storeFile;
+    private SdbfStore store;
+
+    @Before
+    public void setup() throws IOException {
+        storeFile = File.createTempFile("sdbf", "store");
+        storeFile.deleteOnExit();
+        store = SdbfStore.open(storeFile, GENERATOR);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void testStoredSdbfsAreFoundById() throws IOException {
+        store.put(1, "sdbf:03:1:1:...\n");
+        store.put(2, "");
+
+        assertEquals("sdbf:03:1:1:...\n", store.get(1));
+        assertEquals("", store.get(2));
+        assertNull(store.get(3));
+        assertSame(store, SdbfStore.open(storeFile, GENERATOR));
+    }
+
+    @Test
+    public void testKeyedSdbfsAreFoundByKeyAfterReopening() throws IOException {
+        store.put(1, "abc:1673", "sdbf:03:1:1:...\n");
+        store.put(2, "sdbf:03:1:2:...\n");
+        store.close();
+
+        store = SdbfStore.open(storeFile, GENERATOR);
+
+        assertEquals("sdbf:03:1:1:...\n", store.get("abc:1673"));
+        assertEquals("sdbf:03:1:1:...\n", store.get(1));
+        assertTrue(store.contains("abc:1673"));
+        assertFalse(store.contains("abc:1674"));
+        assertEquals("sdbf:03:1:2:...\n", store.get(2));
+    }
+
+    @Test
+    public void testLaterRecordReplacesEarlier() throws IOException {
+        store.put(1, "sdbf:03:1:1:old\n");
+        store.put(1, "sdbf:03:1:1:new\n");
+
+        assertEquals(1, store.size());
+        assertEquals("sdbf:03:1:1:new\n", store.get(1));
+    }
+
+    @Test
+    public void testStoreIsReadAgainAfterTruncatedRecord() throws IOException {
+        store.put(1, "sdbf:03:1:1:first\n");
+        store.put(2, "sdbf:03:1:2:second\n");
+        store.close();
+
+        RandomAccessFile raf = new RandomAccessFile(storeFile, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        store = SdbfStore.open(storeFile, GENERATOR);
+
+        assertEquals("sdbf:03:1:1:first\n", store.get(1));
+        assertFalse(store.contains(2));
+
+        store.put(2, "sdbf:03:1:2:again\n");
+
+        assertEquals("sdbf:03:1:2:again\n", store.get(2));
+    }
+
+    @Test
+    public void testStoreWithOtherSettingsIsEmptied() throws IOException {
+        store.put(1, "sdbf:03:1:1:java\n");
+        store.close();
+
+        store = SdbfStore.open(storeFile, "engine=SDHASH");
+
+        assertEquals(0, store.size());
+        assertNull(store.get(1));
+
+        store.put(1, "sdbf:03:1:1:sdhash\n");
+        store.close();
+
+        store = SdbfStore.open(storeFile, "engine=SDHASH");
+
+        assertEquals("sdbf:03:1:1:sdhash\n", store.get(1));
+    }
+
+    @Test
+    public void testFileWithoutHeaderIsEmptied() throws IOException {
+        store.close();
+
+        RandomAccessFile raf = new RandomAccessFile(storeFile, "rw");
+        raf.setLength(0);
+        raf.writeLong(1);
+        raf.writeInt(0);
+        raf.close();
+
+        store = SdbfStore.open(storeFile, GENERATOR);
+
+        assertFalse(store.contains(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenStoreIsNotSharedWithOtherSettings() throws IOException {
+        SdbfStore.open(storeFile, "engine=SDHASH");
+    }
+
+    @Test
+    public void testStoresAreClosedWithTheCase() throws IOException {
+        store.put(1, "sdbf:03:1:1:...\n");
+
+        SdbfStore.closeAll();
+
+        SdbfStore reopened = SdbfStore.open(storeFile, GENERATOR);
+
+        assertNotSame(store, reopened);
+        assertEquals("sdbf:03:1:1:...\n", reopened.get(1));
+
+        store = reopened;
+    }
+
+    @Test
+    public void testGeneratorNamesBlockModeSettings() {
+        AhbmJobSettings settings = new AhbmJobSettings(false, false, 1, 1024);
+
+        assertEquals("engine=JAVA", SdbfStore.getGenerator(settings));
+
+        settings.setBlockMode(true);
+
+        assertEquals("engine=JAVA blockMode=true maxFileSize=1048576 blockSegmentSize=67108864", SdbfStore.getGenerator(settings));
+    }
+}
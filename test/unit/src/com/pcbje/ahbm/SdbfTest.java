@@ -0,0 +1,79 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author pcbje
+ */
+public class SdbfTest {
+
+    @Test
+    public void testParseStreamDigest() throws IOException {
+        Sdbf loremlorem = Sdbf.parseFile(getResource("loremlorem.sdbf")).get(1);
+
+        assertEquals("ipsumlorem", loremlorem.getName());
+        assertEquals(1674, loremlorem.getSize());
+        assertEquals(1, loremlorem.getBfCount());
+        assertEquals(31, loremlorem.getElemCount(0));
+    }
+
+    @Test
+    public void testSegmentNames() {
+        String segment = Sdbf.getSegmentName("42", 128L << 20);
+
+        assertEquals("42.0128M", segment);
+        assertEquals(128L << 20, Sdbf.getSegmentOffset(segment));
+        assertEquals("42", Sdbf.getBaseName(segment));
+        assertEquals(-1, Sdbf.getSegmentOffset("42"));
+        assertEquals("report.M", Sdbf.getBaseName("report.M"));
+        assertEquals("v1.2M", Sdbf.getBaseName("v1.2M"));
+    }
+
+    @Test
+    public void testParseBlockDigest() throws IOException {
+        Sdbf dummy = Sdbf.parseFile(getResource("dummy.sdbf")).get(0);
+
+        assertEquals("dummy.txt.0000M", dummy.getName());
+        assertEquals(3263, dummy.getSize());
+        assertEquals(1, dummy.getBfCount());
+        assertEquals(0x37, dummy.getElemCount(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseInvalidDigestThrowsException() {
+        Sdbf.parse("stream-set-1.sdbf");
+    }
+
+    @Test
+    public void testRename() {
+        String sdbf = "sdbf:03:14:/tmp/a:b probe:1674:sha1:256:5:7ff:160:1:31:BAAAgAAAAAiAAABQ";
+
+        assertEquals("sdbf:03:2:42:1674:sha1:256:5:7ff:160:1:31:BAAAgAAAAAiAAABQ", Sdbf.rename(sdbf, "42"));
+    }
+
+    @Test
+    public void testRenameIgnoresOtherLines() {
+        assertEquals("warning: file too small", Sdbf.rename("warning: file too small", "42"));
+    }
+
+    private File getResource(String name) {
+        return new File(getClass().getClassLoader().getResource(name).getPath());
+    }
+}
@@ -14,14 +14,22 @@
 package com.pcbje.ahbm;
 
 import com.pcbje.ahbm.matchable.Matchable;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.Content;
 import static org.mockito.Mockito.*;
 import org.mockito.invocation.InvocationOnMock;
@@ -59,11 +67,12 @@ public class SdhashTest {
 
     @Test
     public void testGenerateSdbf() throws IOException, TskCoreException {
-        String actual = "sdbf:03:1:0:3271:sha1:256:5:7ff:160:1:53:AAKAJAAEBQIACCAAAAAAEIGEABAgIkAARwDBiAAACAAAAMAAKAQKABAACBEhAAAkTCABlAADsAQIAAAJAICAWWACASAAAQAAABBQAIKAAAIACMCCEAAFAEYACMABBABAQACAAAQEEACQCEAAIBCQAESAAEABERBAQgAAAgAAQlNBkACAAoAEAEAAQAlAAABIgQAIFIAEARQAACAjQAAAAEAADAAAUAAAABKAACARAoCQAAAQAQAAAQBkAAEAQUIEAAAAIAAAAAgAgQRAEiIgAgAEACJkgEASWEgCBCAAAEACAIBCEAIAAgHgAASAAgAAxABGMABAQCBAQAUAJgEAAA==\r\n";
+        String actual = "sdbf:03:1:0:3271:sha1:256:5:7ff:160:1:53:AAKAJAAEBQIACCAAAAAAEIGEABAgIkAARwDBiAAACAAAAMAAKAQKABAACBEhAAAkTCABlAADsAQIAAAJAICAWWACASAAAQAAABBQAIKAAAIACMCCEAAFAEYACMABBABAQACAAAQEEACQCEAAIBCQAESAAEABERBAQgAAAgAAQlNBkACAAoAEAEAAQAlAAABIgQAIFIAEARQAACAjQAAAAEAADAAAUAAAABKAACARAoCQAAAQAQAAAQBkAAEAQUIEAAAAIAAAAAgAgQRAEiIgAgAEACJkgEASWEgCBCAAAEACAIBCEAIAAgHgAASAAgAAxABGMABAQCBAQAUAJgEAAA==\n";
 
         File file = new File(getClass().getClassLoader().getResource("dummy.txt").getPath());
 
         AhbmJobSettings settings = new AhbmJobSettings(false, false, (int) file.length(), (int) file.length());
+        settings.setEngine(AhbmJobSettings.Engine.SDHASH);
        
         when(caseWrapper.getSettings()).thenReturn(settings);
 
@@ -86,6 +95,135 @@ public class SdhashTest {
         assertEquals(actual, generated);
     }
 
+    @Test
+    public void testGenerateSdbfInProcess() throws IOException, TskCoreException {
+        File file = new File(getClass().getClassLoader().getResource("ipsumlorem.txt").getPath());
+        File sdbf = new File(getClass().getClassLoader().getResource("ipsumlorem.sdbf").getPath());
+
+        BufferedReader reader = new BufferedReader(new FileReader(sdbf));
+        String actual = reader.readLine().replace(":10:ipsumlorem:", ":1:0:");
+        reader.close();
+
+        AhbmJobSettings settings = new AhbmJobSettings(false, false, (int) file.length(), (int) file.length());
+        settings.setEngine(AhbmJobSettings.Engine.JAVA);
+
+        when(caseWrapper.getSettings()).thenReturn(settings);
+
+        FileInputStream fis = new FileInputStream(file);
+        buffer = new byte[(int) file.length()];
+        fis.read(buffer);
+
+        Content content = mock(Content.class);
+        when(content.getName()).thenReturn(file.getName());
+        when(content.getSize()).thenReturn((long) buffer.length);
+        doAnswer(readAnswer).when(caseWrapper).readFile(any(OutputStream.class), any(Integer.class), any(Content.class));
+
+        Matchable matchable = mock(Matchable.class);
+        when(matchable.getContent()).thenReturn(content);
+
+        String generated = sdhash.generateSdbf(matchable);
+
+        assertEquals(actual, generated.trim());
+    }
+
+    @Test
+    public void testCachedSdbfIsNotGeneratedAgain() throws IOException, TskCoreException {
+        File file = new File(getClass().getClassLoader().getResource("ipsumlorem.txt").getPath());
+        File storeFile = File.createTempFile("sdbf", "store");
+        storeFile.deleteOnExit();
+
+        when(caseWrapper.getSettings()).thenReturn(new AhbmJobSettings(false, false, 0, (int) file.length()));
+
+        FileInputStream fis = new FileInputStream(file);
+        buffer = new byte[(int) file.length()];
+        fis.read(buffer);
+
+        doAnswer(readAnswer).when(caseWrapper).readFile(any(OutputStream.class), any(Integer.class), any(Content.class));
+
+        SdbfStore store = SdbfStore.open(storeFile, SdbfStore.getGenerator(new AhbmJobSettings()));
+        sdhash.setCache(new SdbfCache(store));
+        sdhash.setStore(store);
+
+        AbstractFile original = getDuplicate(1, buffer.length);
+        AbstractFile duplicate = getDuplicate(2, buffer.length);
+
+        String generated = sdhash.generateSdbf(new Matchable("1", original));
+        String reused = sdhash.generateSdbf(new Matchable("2", duplicate));
+
+        verify(caseWrapper, times(1)).readFile(any(OutputStream.class), any(Integer.class), any(Content.class));
+        assertEquals(generated.replace(":1:1:", ":1:2:"), reused);
+
+        store.close();
+    }
+
+    @Test
+    public void testStoredSdbfIsNotGeneratedAgain() throws IOException, TskCoreException {
+        File storeFile = File.createTempFile("sdbf", "store");
+        storeFile.deleteOnExit();
+
+        when(caseWrapper.getSettings()).thenReturn(new AhbmJobSettings(false, false, 0, 1024));
+
+        SdbfStore store = SdbfStore.open(storeFile, SdbfStore.getGenerator(new AhbmJobSettings()));
+        store.put(1, "sdbf:03:1:1:stored\n");
+        sdhash.setStore(store);
+
+        AbstractFile file = getDuplicate(1, 2048);
+
+        assertEquals("sdbf:03:1:1:stored\n", sdhash.generateSdbf(new Matchable("1", file)));
+        verify(caseWrapper, never()).readFile(any(OutputStream.class), any(Integer.class), any(Content.class));
+
+        store.close();
+    }
+
+    @Test
+    public void testLargeContentIsDigestedInSegments() throws IOException, TskCoreException {
+        AhbmJobSettings settings = new AhbmJobSettings(false, false, 1, 1024);
+        settings.setBlockMode(true);
+        settings.setBlockSegmentSize(1);
+
+        when(caseWrapper.getSettings()).thenReturn(settings);
+
+        final byte[] data = new byte[(5 << 20) / 2];
+        new Random(1).nextBytes(data);
+
+        AbstractFile file = getDuplicate(3, data.length);
+
+        when(caseWrapper.readFile(any(byte[].class), anyInt(), any(Content.class), anyLong())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                byte[] buffer = (byte[]) invocation.getArguments()[0];
+                int offset = (int) (long) (Long) invocation.getArguments()[3];
+                int length = Math.min((Integer) invocation.getArguments()[1], data.length - offset);
+
+                System.arraycopy(data, offset, buffer, 0, length);
+
+                return length;
+            }
+        });
+
+        final List<String> segments = new ArrayList<>();
+
+        assertTrue(sdhash.isBlockContent(file));
+
+        sdhash.generateBlockSdbfs(file, new Sdhash.SegmentHandler() {
+            @Override
+            public void handle(String sdbf) {
+                segments.add(Sdbf.parse(sdbf).getName());
+            }
+        });
+
+        assertEquals(Arrays.asList("3.0000M", "3.0001M", "3.0002M"), segments);
+        verify(caseWrapper, never()).readFile(any(OutputStream.class), any(Integer.class), any(Content.class));
+    }
+
+    private AbstractFile getDuplicate(long id, long size) {
+        AbstractFile file = mock(AbstractFile.class);
+        when(file.getId()).thenReturn(id);
+        when(file.getSize()).thenReturn(size);
+        when(file.getMd5Hash()).thenReturn("5D41402ABC4B2A76B9719D911017C592");
+        return file;
+    }
+
     @Test
     public void testCompareSets() throws IOException {
         File probe = new File(getClass().getClassLoader().getResource("loremipsum.sdbf").getPath());
@@ -111,4 +249,20 @@ public class SdhashTest {
 
         sdhash.validateSdbf(probe);
     }
+
+    @Test
+    public void testVerifyTruncatedSdbfNamesTheLine() throws IOException {
+        String valid = new String(Files.readAllBytes(new File(getClass().getClassLoader().getResource("loremipsum.sdbf").getPath()).toPath()), "UTF-8").trim();
+        File truncated = File.createTempFile("truncated", ".sdbf");
+        truncated.deleteOnExit();
+
+        Files.write(truncated.toPath(), (valid + "\n" + valid.substring(0, valid.length() / 2) + "\n").getBytes("UTF-8"));
+
+        try {
+            sdhash.validateSdbf(truncated);
+            fail("Expected the truncated SDBF to be invalid");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getMessage().contains("line 2"));
+        }
+    }
 }
@@ -0,0 +1,152 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the pool against the script of SdhashWorkerTest in place of sdhash.
+ *
+ * @author pcbje
+ */
+public class SdhashWorkerPoolTest {
+
+    private File dir;
+    private File stub;
+    private SdhashWorkerPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        Assume.assumeTrue(!System.getProperty("os.name").toLowerCase().startsWith("windows"));
+
+        dir = Files.createTempDirectory("ahbm-sdhash-stub").toFile();
+        stub = SdhashWorkerTest.createStub(dir);
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+
+        if (dir != null) {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testHealthyWorkerIsReused() throws Exception {
+        pool = new SdhashWorkerPool(1, 5000, stub.getAbsolutePath());
+
+        assertEquals(pool.execute(false, "--pid"), pool.execute(false, "--pid"));
+    }
+
+    @Test
+    public void testCrashedWorkerIsReplaced() throws Exception {
+        pool = new SdhashWorkerPool(1, 5000, stub.getAbsolutePath());
+
+        String before = pool.execute(false, "--pid").get(0);
+
+        try {
+            pool.execute(false, "--crash");
+            fail();
+        } catch (IOException ex) {
+            assertEquals("sdhash worker exited", ex.getMessage());
+        }
+
+        String after = pool.execute(false, "--pid").get(0);
+
+        assertFalse(before.equals(after));
+    }
+
+    @Test
+    public void testHungJobIsKilledAtTheTimeout() throws Exception {
+        pool = new SdhashWorkerPool(1, 500, stub.getAbsolutePath());
+
+        File pidFile = new File(dir, "hang.pid");
+        long start = System.nanoTime();
+
+        try {
+            pool.execute(false, "--hang", pidFile.getAbsolutePath());
+            fail();
+        } catch (IOException ex) {
+            assertEquals("sdhash did not finish within 500 ms", ex.getMessage());
+        }
+
+        assertTrue(System.nanoTime() - start < 10000000000L);
+
+        String pid = new String(Files.readAllBytes(pidFile.toPath())).trim();
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (isRunning(pid) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertFalse(isRunning(pid));
+        assertEquals(Arrays.asList("done"), pool.execute(false, "--done"));
+    }
+
+    @Test
+    public void testClosedPoolRunsNothing() throws Exception {
+        pool = new SdhashWorkerPool(1, 5000, stub.getAbsolutePath());
+
+        pool.execute(false, "--done");
+        pool.close();
+
+        try {
+            pool.execute(false, "--done");
+            fail();
+        } catch (IOException ex) {
+            assertEquals("The sdhash worker pool is closed", ex.getMessage());
+        }
+    }
+
+    /**
+     * @return true if the process exists and is not a zombie, which is all
+     * that is left of a killed child until it is reaped
+     */
+    private static boolean isRunning(String pid) throws IOException, InterruptedException {
+        Process ps = new ProcessBuilder("ps", "-o", "stat=", "-p", pid).start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (InputStream in = ps.getInputStream()) {
+            byte[] buffer = new byte[256];
+            int read;
+
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        ps.waitFor();
+
+        String stat = out.toString().trim();
+
+        return stat.length() > 0 && !stat.startsWith("Z");
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the worker against a shell script that stands in for sdhash.
+ *
+ * @author pcbje
+ */
+public class SdhashWorkerTest {
+
+    private File dir;
+    private SdhashWorker worker;
+
+    @Before
+    public void setUp() throws IOException {
+        Assume.assumeTrue(!System.getProperty("os.name").toLowerCase().startsWith("windows"));
+
+        dir = Files.createTempDirectory("ahbm-sdhash-stub").toFile();
+        worker = new SdhashWorker(createStub(dir).getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        if (worker != null) {
+            worker.destroy();
+        }
+
+        if (dir != null) {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testOutputIsFramedByLine() throws Exception {
+        char[] longLine = new char[1000];
+        Arrays.fill(longLine, 'x');
+
+        assertEquals(Arrays.asList("one", "", "two", new String(longLine), "__AHBM_0__ 0", "last"), run("--lines"));
+        assertEquals(Arrays.asList("done"), run("--done"));
+    }
+
+    @Test
+    public void testStderrIsNotOutput() throws Exception {
+        assertEquals(Arrays.asList("result"), run("--warn"));
+    }
+
+    @Test
+    public void testStdinIsClosed() throws Exception {
+        assertEquals(Arrays.asList("read"), run("--stdin"));
+    }
+
+    @Test
+    public void testFailureIsAnErrorWithStderr() throws Exception {
+        try {
+            run("--fail");
+            fail();
+        } catch (IOException ex) {
+            assertEquals("sdhash exited with status 3: bad digest", ex.getMessage());
+        }
+
+        assertEquals(Arrays.asList("done"), run("--done"));
+    }
+
+    @Test
+    public void testErrorsOnlyHandsOutStderr() throws Exception {
+        final List<String> lines = new ArrayList<>();
+
+        worker.run(Arrays.asList("--validate", "a.sdbf"), true, new SdhashWorkerPool.Output() {
+            @Override
+            public void handle(byte[] line, int length) {
+                lines.add(new String(line, 0, length));
+            }
+        });
+
+        assertEquals(Arrays.asList("invalid a.sdbf"), lines);
+    }
+
+    private List<String> run(String... args) throws IOException {
+        final List<String> lines = new ArrayList<>();
+
+        worker.run(Arrays.asList(args), false, new SdhashWorkerPool.Output() {
+            @Override
+            public void handle(byte[] line, int length) {
+                lines.add(new String(line, 0, length));
+            }
+        });
+
+        return lines;
+    }
+
+    /**
+     * Writes a script that behaves according to its first argument. The
+     * worker shell is the parent of the script, so $PPID identifies the
+     * worker.
+     */
+    static File createStub(File dir) throws IOException {
+        File stub = new File(dir, "sdhash");
+
+        FileWriter writer = new FileWriter(stub);
+
+        try {
+            writer.write("#!/bin/sh\n");
+            writer.write("case \"$1\" in\n");
+            writer.write("--pid) echo $PPID ;;\n");
+            writer.write("--done) echo done ;;\n");
+            writer.write("--crash) kill -9 $PPID ;;\n");
+            writer.write("--hang) echo $$ > \"$2\"; exec sleep 60 ;;\n");
+            writer.write("--lines) printf 'one\\n\\ntwo\\r\\n%s\\n__AHBM_0__ 0\\nlast' \"$(head -c 1000 /dev/zero | tr '\\000' x)\" ;;\n");
+            writer.write("--warn) echo warning >&2; echo result ;;\n");
+            writer.write("--stdin) cat; echo read ;;\n");
+            writer.write("--fail) echo bad digest >&2; exit 3 ;;\n");
+            writer.write("--validate) echo \"invalid $2\" >&2; echo ignored ;;\n");
+            writer.write("*) echo \"unknown $*\" >&2; exit 1 ;;\n");
+            writer.write("esac\n");
+        } finally {
+            writer.close();
+        }
+
+        stub.setExecutable(true);
+
+        return stub;
+    }
+}
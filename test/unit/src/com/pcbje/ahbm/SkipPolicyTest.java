@@ -0,0 +1,138 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ *
+ * @author pcbje
+ */
+public class SkipPolicyTest {
+
+    @Test
+    public void testFirstSkippingRuleIsCounted() {
+        SkipPolicy policy = new SkipPolicy();
+        policy.addRule(new SkipPolicy.KnownGood());
+        policy.addRule(new SkipPolicy.MinimumSize(512));
+
+        AbstractFile knownAndSmall = getFile(100);
+        when(knownAndSmall.getKnown()).thenReturn(TskData.FileKnown.KNOWN);
+
+        assertTrue(policy.check(knownAndSmall) instanceof SkipPolicy.KnownGood);
+        assertTrue(policy.check(getFile(100)) instanceof SkipPolicy.MinimumSize);
+        assertTrue(policy.check(getFile(200)) instanceof SkipPolicy.MinimumSize);
+        assertNull(policy.check(getFile(512)));
+
+        Map<String, Long> counts = policy.getSkipCounts();
+
+        assertEquals(Long.valueOf(1), counts.get("known good"));
+        assertEquals(Long.valueOf(2), counts.get("smaller than 512 bytes"));
+        assertEquals("Skipped 3 files: 1 known good, 2 smaller than 512 bytes", policy.getSummary());
+    }
+
+    @Test
+    public void testNothingSkippedHasNoSummary() {
+        SkipPolicy policy = SkipPolicy.fromSettings(new AhbmJobSettings(false, false, 0, 1024));
+
+        assertNull(policy.check(getFile(1024)));
+        assertNull(policy.getSummary());
+    }
+
+    @Test
+    public void testMimeTypesAreMatchedWithWildcards() throws TskCoreException {
+        SkipPolicy.MimeType rule = new SkipPolicy.MimeType("application/zip", " video/* ");
+
+        assertTrue(rule.skip(getFile(1024, "video/mp4")));
+        assertTrue(rule.skip(getFile(1024, "APPLICATION/ZIP")));
+        assertFalse(rule.skip(getFile(1024, "application/zipx")));
+        assertFalse(rule.skip(getFile(1024, "text/plain")));
+        assertFalse(rule.skip(getFile(1024)));
+    }
+
+    @Test
+    public void testFailingRuleDoesNotSkip() throws TskCoreException {
+        AbstractFile file = getFile(1024);
+        when(file.getGenInfoAttributes(any(BlackboardAttribute.ATTRIBUTE_TYPE.class))).thenThrow(new TskCoreException("No database"));
+
+        SkipPolicy policy = new SkipPolicy();
+        policy.addRule(new SkipPolicy.MimeType("text/plain"));
+
+        assertNull(policy.check(file));
+    }
+
+    @Test
+    public void testSampledEntropySkipsEmptyFiles() throws Exception {
+        SkipPolicy.SampledEntropy rule = new SkipPolicy.SampledEntropy(4, 1024);
+
+        byte[] text = Files.readAllBytes(new File(getClass().getClassLoader().getResource("ipsumlorem.txt").getPath()).toPath());
+
+        assertTrue(rule.skip(getFile(new byte[64 * 1024])));
+        assertFalse(rule.skip(getFile(text)));
+        assertFalse(rule.skip(getFile(new byte[32])));
+    }
+
+    private AbstractFile getFile(long size, String... mimeTypes) {
+        AbstractFile file = mock(AbstractFile.class);
+        when(file.getSize()).thenReturn(size);
+
+        try {
+            ArrayList<BlackboardAttribute> attributes = new ArrayList<>();
+
+            for (String mimeType : mimeTypes) {
+                BlackboardAttribute attribute = mock(BlackboardAttribute.class);
+                when(attribute.getValueString()).thenReturn(mimeType);
+                attributes.add(attribute);
+            }
+
+            when(file.getGenInfoAttributes(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_FILE_TYPE_SIG)).thenReturn(attributes);
+        } catch (TskCoreException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        return file;
+    }
+
+    private AbstractFile getFile(final byte[] data) throws TskCoreException {
+        AbstractFile file = getFile(data.length);
+
+        when(file.read(any(byte[].class), anyLong(), anyLong())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                byte[] buffer = (byte[]) invocation.getArguments()[0];
+                int offset = (int) (long) (Long) invocation.getArguments()[1];
+                int length = (int) Math.min((Long) invocation.getArguments()[2], data.length - offset);
+
+                System.arraycopy(data, offset, buffer, 0, length);
+
+                return length;
+            }
+        });
+
+        return file;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm;
+
+import com.pcbje.ahbm.matchable.MatchableHandler;
+import java.util.Collection;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ *
+ * @author pcbje
+ */
+public class StreamMatchBatcherTest {
+
+    private SdbfSet sdbfSet;
+    private MatchableHandler matchHandler;
+
+    @Before
+    public void setup() {
+        sdbfSet = mock(SdbfSet.class);
+        matchHandler = mock(MatchableHandler.class);
+    }
+
+    @Test
+    public void testFullBatchIsMatchedOnce() throws Exception {
+        StreamMatchBatcher batcher = new StreamMatchBatcher(sdbfSet, matchHandler, 3, 60000);
+
+        for (int i = 1; i <= 3; i++) {
+            batcher.add(getContent(i), "sdbf" + i + "\n");
+        }
+
+        verify(sdbfSet, times(1)).streamMatch(anyMap(), eq("sdbf1\nsdbf2\nsdbf3\n"));
+        verify(matchHandler, times(1)).handleStreamMatches(any(Collection.class));
+        assertEquals(0, batcher.getPendingCount());
+
+        batcher.close();
+    }
+
+    @Test
+    public void testPartialBatchIsMatchedOnClose() throws Exception {
+        StreamMatchBatcher batcher = new StreamMatchBatcher(sdbfSet, matchHandler, 500, 60000);
+
+        batcher.add(getContent(1), "sdbf1\n");
+        batcher.add(getContent(2), "sdbf2\n");
+
+        verify(sdbfSet, never()).streamMatch(anyMap(), anyString());
+
+        batcher.close();
+
+        verify(sdbfSet).streamMatch(anyMap(), eq("sdbf1\nsdbf2\n"));
+    }
+
+    @Test
+    public void testPartialBatchIsMatchedAfterDelay() throws Exception {
+        StreamMatchBatcher batcher = new StreamMatchBatcher(sdbfSet, matchHandler, 500, 10);
+
+        batcher.add(getContent(1), "sdbf1\n");
+
+        verify(sdbfSet, timeout(5000)).streamMatch(anyMap(), eq("sdbf1\n"));
+
+        batcher.close();
+
+        verify(sdbfSet, times(1)).streamMatch(anyMap(), anyString());
+    }
+
+    @Test
+    public void testProbesAreKeyedByContentId() throws Exception {
+        StreamMatchBatcher batcher = new StreamMatchBatcher(sdbfSet, matchHandler, 2, 60000);
+
+        batcher.add(getContent(7), "sdbf7\n");
+        batcher.add(getContent(8), "sdbf8\n");
+
+        verify(sdbfSet).streamMatch((Map) argThat(new org.hamcrest.BaseMatcher<Map>() {
+            @Override
+            public boolean matches(Object item) {
+                Map map = (Map) item;
+                return map.size() == 2 && map.containsKey("7") && map.containsKey("8");
+            }
+
+            @Override
+            public void describeTo(org.hamcrest.Description description) {
+                description.appendText("probes 7 and 8");
+            }
+        }), anyString());
+
+        batcher.close();
+    }
+
+    private Content getContent(long id) {
+        Content content = mock(Content.class);
+        when(content.getId()).thenReturn(id);
+        when(content.getName()).thenReturn("file" + id);
+        return content;
+    }
+}
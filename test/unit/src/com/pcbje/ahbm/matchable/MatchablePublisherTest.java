@@ -0,0 +1,85 @@
+/**
+ * This work is made available under the Apache License, Version 2.0.
+ *
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.pcbje.ahbm.matchable;
+
+import com.pcbje.ahbm.CaseWrapper;
+import java.awt.EventQueue;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ * @author pcbje
+ */
+public class MatchablePublisherTest {
+
+    private MatchableViewer viewer;
+    private CaseWrapper caseWrapper;
+
+    @Before
+    public void setUp() throws Exception {
+        caseWrapper = mock(CaseWrapper.class);
+
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    viewer = new MatchableViewer();
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        });
+    }
+
+    private void drain(final MatchablePublisher publisher) throws Exception {
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                publisher.drain();
+            }
+        });
+    }
+
+    @Test
+    public void testProbesAreAddedInOneBatch() throws Exception {
+        MatchablePublisher publisher = new MatchablePublisher(viewer, caseWrapper, 60000, 60000);
+
+        for (int i = 0; i < 3; i++) {
+            publisher.publish(new Matchable("probe-" + i, null));
+        }
+
+        assertEquals(0, viewer.getRootNode().getChildren().size());
+
+        drain(publisher);
+
+        assertEquals(3, viewer.getRootNode().getChildren().size());
+        verify(caseWrapper, never()).addInfoMessage(anyString());
+    }
+
+    @Test
+    public void testHitsAreSummarizedInOneNotice() throws Exception {
+        MatchablePublisher publisher = new MatchablePublisher(viewer, caseWrapper, 60000, 0);
+
+        publisher.publish(new Matchable("probe-1", null));
+        publisher.publish(new Matchable("probe-2", null));
+
+        drain(publisher);
+        drain(publisher);
+
+        verify(caseWrapper, times(1)).addInfoMessage("2 new AHBM hits in last 0s");
+    }
+}
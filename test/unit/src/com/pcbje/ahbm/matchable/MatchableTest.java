@@ -14,9 +14,16 @@
 package com.pcbje.ahbm.matchable;
 
 import java.awt.EventQueue;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 import org.openide.util.Exceptions;
+import org.sleuthkit.datamodel.Content;
 
 /**
  *
@@ -58,4 +65,111 @@ public class MatchableTest {
             }
         });
     }
+
+    @Test
+    public void testAncestorsAreCheckedByName() throws Exception {
+        Matchable file1 = new Matchable("file-1", null);
+        Matchable file2 = new Matchable("file-2", null);
+        Matchable file3 = new Matchable("file-3", null);
+        Matchable again = new Matchable("file-1", null);
+
+        file1.addChild(file2);
+        file2.addChild(file3);
+        file3.addChild(again);
+
+        Set<String> ancestorNames = file3.getAncestorNames();
+
+        assertEquals(2, ancestorNames.size());
+        assertTrue(again.isParentFor(file3, ancestorNames));
+        assertTrue(file3.isParentFor(file3, ancestorNames));
+        assertFalse(new Matchable("file-4", null).isParentFor(file3, ancestorNames));
+    }
+
+    @Test
+    public void testChildrenAreIndexedByName() throws Exception {
+        Matchable parent = new Matchable("parent", null);
+        Matchable child = new Matchable("child", null);
+
+        parent.addChild(child);
+        parent.addChild(new Matchable("child", null));
+
+        assertTrue(parent.hasChild(new Matchable("child", null)));
+
+        parent.removeChild(child);
+
+        assertTrue(parent.hasChild(child));
+
+        parent.removeChild(parent.getChildren().get(0));
+
+        assertFalse(parent.hasChild(child));
+    }
+
+    @Test
+    public void testUniquePathIsLookedUpOnce() throws Exception {
+        Content content = mock(Content.class);
+        when(content.getUniquePath()).thenReturn("/img/file");
+
+        Matchable matchable = new Matchable("file", content);
+
+        assertEquals("/img/file", matchable.getUniqueIdentifier());
+        assertTrue(matchable.isParentFor(matchable));
+
+        verify(content, times(1)).getUniquePath();
+    }
+
+    @Test
+    public void testIndexFollowsTree() throws Exception {
+        Content content = mock(Content.class);
+        when(content.getId()).thenReturn(7L);
+
+        MatchableIndex index = new MatchableIndex();
+        Matchable root = new Matchable("", null);
+        root.setIndex(index);
+
+        Matchable probe = new Matchable("probe", content);
+        Matchable match = new Matchable("match", null);
+        Matchable again = new Matchable("probe", content);
+
+        probe.addChild(match);
+        root.addChild(probe);
+        match.addChild(again);
+
+        assertTrue(index.contains(probe));
+        assertTrue(index.contains(match));
+        assertFalse(index.contains(root));
+        assertEquals(2, index.getOccurrences(again).size());
+
+        root.removeChild(probe);
+
+        assertFalse(index.contains(again));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testAddedChildrenFireOneEvent() throws Exception {
+        final List<PropertyChangeEvent> events = new ArrayList<>();
+
+        Matchable parent = new Matchable("parent", null);
+        parent.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (Matchable.ADD_CHILD.equals(evt.getPropertyName())) {
+                    events.add(evt);
+                }
+            }
+        });
+
+        List<Matchable> children = new ArrayList<>();
+
+        for (int i = 0; i < 5000; i++) {
+            children.add(new Matchable("child-" + i, null));
+        }
+
+        parent.addChildren(children);
+
+        assertEquals(1, events.size());
+        assertEquals(5000, events.get(0).getNewValue());
+        assertSame(parent, children.get(4999).getParent());
+        assertTrue(parent.hasChild(children.get(0)));
+    }
 }